@@ -0,0 +1,477 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+/**
+ * Microbenchmarks for the board, the HexLattice, move generation, win detection,
+ * the search and rendering. Each benchmark runs for a number of timed warmup
+ * iterations and then a number of measured iterations, and reports the average
+ * time per operation. Results are written as JSON, so runs from different commits
+ * can be diffed.
+ *
+ * This is an interim harness until the project has a build that can bring in JMH.
+ * It has no forked JVMs or compiler blackholes, only batching and a result sink,
+ * so its numbers compare with other runs of this harness but not with JMH results.
+ *
+ * Positions are taken from a deterministic greedy game, so every run measures the
+ * same opening, midgame and endgame.
+ *
+ * The Scaling benchmarks repeat board construction, move validation, move
+ * generation and making moves across radii up to BoardLayout.MAX_RADIUS. The
+ * work of a move depends on the pieces it involves, so only construction should
+ * grow with the radius. Run them alone with --filter Scaling.
+ *
+ * Usage: java Benchmark [--filter TEXT] [--warmup N] [--iterations N] [--time MILLIS] [--out FILE]
+ */
+public class Benchmark {
+
+	/** Two-player colors used for the benchmark positions */
+	private static final Color[] TWO_PLAYERS = {App.PLAYERS[0], App.PLAYERS[1]};
+	/** Plies before the end of the greedy game that the endgame position is taken */
+	private static final int ENDGAME_PLIES = 6;
+	/** Longest greedy game played to find the benchmark positions */
+	private static final int MAX_GAME_PLIES = 400;
+	/** Depth of the fixed-depth search benchmark */
+	private static final int SEARCH_DEPTH = 3;
+	/** Radii of the scaling benchmarks */
+	private static final int[] SCALING_RADII = {5, 10, 20, 40, BoardLayout.MAX_RADIUS};
+	/** Standard normal quantile used for the 99.9% confidence interval */
+	private static final double Z_999 = 3.291;
+
+	/** Only benchmarks whose name contains this text are run */
+	private String filter = "";
+	/** Number of warmup iterations */
+	private int warmup = 3;
+	/** Number of measured iterations */
+	private int iterations = 5;
+	/** Length of each iteration in milliseconds */
+	private long iterationMillis = 500;
+	/** File to write the JSON results to, or null for standard output */
+	private String out;
+
+	/** Sink for benchmark results, so the JIT cannot remove the work */
+	private int sink;
+
+	/**
+	 * A single benchmarked operation
+	 */
+	private static abstract class Case {
+		/** Name reported in the results */
+		String name;
+
+		Case(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Runs the operation once
+		 * @return a value depending on the work done
+		 */
+		abstract int run();
+	}
+
+	/**
+	 * Runs the benchmarks from the command line
+	 * @param args options, see the class comment
+	 */
+	public static void main(String[] args) throws IOException {
+		/** Rendering is offscreen, so no display is needed */
+		System.setProperty("java.awt.headless", "true");
+		Benchmark b = new Benchmark();
+		b.parse(args);
+		b.run();
+	}
+
+	/**
+	 * Helper method. Reads command-line options
+	 * @param args options
+	 */
+	private void parse(String[] args) {
+		for(int i = 0; i < args.length; i++) {
+			/** Error Handling: Every option takes a value */
+			if(i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + args[i]);
+			String value = args[++i];
+			switch(args[i-1]) {
+				case "--filter": filter = value; break;
+				case "--warmup": warmup = Integer.parseInt(value); break;
+				case "--iterations": iterations = Integer.parseInt(value); break;
+				case "--time": iterationMillis = Long.parseLong(value); break;
+				case "--out": out = value; break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i-1]);
+			}
+		}
+		/** Error Handling: At least one measured iteration */
+		if(iterations < 1) throw new IllegalArgumentException("Iterations must be at least 1");
+	}
+
+	/**
+	 * Runs every benchmark that matches the filter and writes the results
+	 */
+	public void run() throws IOException {
+		ArrayList<String> results = new ArrayList<String>();
+		for(Case c : createCases()) {
+			if(!c.name.contains(filter)) continue;
+			System.err.println("# " + c.name);
+			results.add(measure(c));
+		}
+
+		PrintWriter writer = out == null ? new PrintWriter(System.out) : new PrintWriter(new FileWriter(out));
+		writer.println("{");
+		writer.printf("  \"harness\": \"Benchmark\",%n");
+		writer.printf("  \"jvmVersion\": \"%s\",%n", System.getProperty("java.version"));
+		writer.printf("  \"warmupIterations\": %d,%n", warmup);
+		writer.printf("  \"iterations\": %d,%n", iterations);
+		writer.printf("  \"iterationMillis\": %d,%n", iterationMillis);
+		writer.println("  \"results\": [");
+		for(int i = 0; i < results.size(); i++) {
+			writer.print(results.get(i));
+			writer.println(i < results.size() - 1 ? "," : "");
+		}
+		writer.println("  ]");
+		writer.println("}");
+		writer.flush();
+		if(out != null) writer.close();
+		/** Printed so the sink is used and the results can be told apart from dead code */
+		System.err.println("# sink " + sink);
+	}
+
+	/**
+	 * Helper method. Times one benchmark
+	 * @param c benchmark to run
+	 * @return JSON object with the mean time per operation, its 99.9% confidence
+	 * error (null with a single iteration) and each iteration's time
+	 */
+	private String measure(Case c) {
+		for(int i = 0; i < warmup; i++) {
+			double score = iterate(c);
+			System.err.printf("  warmup %d: %.1f ns/op%n", i + 1, score);
+		}
+		double[] scores = new double[iterations];
+		double total = 0;
+		for(int i = 0; i < iterations; i++) {
+			scores[i] = iterate(c);
+			total += scores[i];
+			System.err.printf("  iteration %d: %.1f ns/op%n", i + 1, scores[i]);
+		}
+		double mean = total / iterations;
+		double variance = 0;
+		for(double s : scores) variance += (s - mean)*(s - mean);
+		double error = iterations > 1 ? Z_999*Math.sqrt(variance / (iterations - 1) / iterations) : Double.NaN;
+
+		StringBuilder raw = new StringBuilder();
+		for(int i = 0; i < iterations; i++) {
+			if(i > 0) raw.append(", ");
+			raw.append(String.format("%.3f", scores[i]));
+		}
+		return String.format(
+				"    {%n" +
+				"      \"name\": \"%s\",%n" +
+				"      \"nsPerOp\": %.3f,%n" +
+				"      \"error\": %s,%n" +
+				"      \"iterations\": [%s]%n" +
+				"    }",
+				c.name, mean, Double.isNaN(error) ? "null" : String.format("%.3f", error), raw);
+	}
+
+	/**
+	 * Helper method. Runs one iteration, doubling the batch size until the iteration
+	 * time is used up so that the clock is read rarely for fast operations
+	 * @param c benchmark to run
+	 * @return average time per operation in nanoseconds
+	 */
+	private double iterate(Case c) {
+		long limit = iterationMillis*1000000L;
+		long ops = 0;
+		long batch = 1;
+		long start = System.nanoTime();
+		long elapsed = 0;
+		while(elapsed < limit) {
+			for(long i = 0; i < batch; i++) sink += c.run();
+			ops += batch;
+			elapsed = System.nanoTime() - start;
+			if(batch < (1 << 20)) batch <<= 1;
+		}
+		return (double) elapsed / ops;
+	}
+
+	/**
+	 * Helper method. Creates the benchmarks
+	 * @return list of benchmarks
+	 */
+	private ArrayList<Case> createCases() {
+		ArrayList<Case> cases = new ArrayList<Case>();
+		final int radius = App.BOARD_RADIUS;
+
+		/** Board construction */
+		cases.add(new Case("Board.new") {
+			int run() {
+				return new Board(radius, App.PLAYERS).size();
+			}
+		});
+
+		/** HexLattice insertion and lookup over every cell of the star */
+		final BoardLayout layout = BoardLayout.forRadius(radius);
+		final int[] cells = new int[layout.getCellCount()];
+		long[] mask = layout.getCells();
+		for(int i = BoardLayout.nextSetBit(mask, 0), n = 0; i >= 0; i = BoardLayout.nextSetBit(mask, i + 1)) cells[n++] = i;
+		cases.add(new Case("HexLattice.insert") {
+			int run() {
+				HexLattice<Piece> lattice = new HexLattice<Piece>();
+				for(int i : cells) {
+					lattice.insert(new HexNode<Piece>(null, layout.getX(i), layout.getY(i), layout.getZ(i)));
+				}
+				return lattice.getAllNodes().size();
+			}
+		});
+		final HexLattice<Piece> lattice = new HexLattice<Piece>();
+		for(int i : cells) lattice.insert(new HexNode<Piece>(null, layout.getX(i), layout.getY(i), layout.getZ(i)));
+		cases.add(new Case("HexLattice.get") {
+			int next;
+			int run() {
+				int i = cells[next];
+				next = next == cells.length - 1 ? 0 : next + 1;
+				return lattice.get(layout.getX(i), layout.getY(i), layout.getZ(i)).getX();
+			}
+		});
+
+		/** Move generation for every piece of the player to move, reference and bitboard */
+		String[] phases = {"opening", "midgame", "endgame"};
+		Board[] boards = createPositions(radius);
+		for(int p = 0; p < phases.length; p++) {
+			final Board board = boards[p];
+			final int player = board.getPosition().getPly() % TWO_PLAYERS.length;
+			final ArrayList<HexNode<Piece>> pieces = getPieces(board, player);
+			cases.add(new Case("Board.getValidMoves." + phases[p]) {
+				int run() {
+					int count = 0;
+					for(HexNode<Piece> n : pieces) count += board.getValidMoves(n).size();
+					return count;
+				}
+			});
+			final int[] moves = new int[layout.getSize()];
+			cases.add(new Case("Board.getMoves." + phases[p]) {
+				int run() {
+					int count = 0;
+					for(HexNode<Piece> n : pieces) count += board.getMoves(board.getIndex(n), moves);
+					return count;
+				}
+			});
+		}
+
+		/** Win detection */
+		final Board endgame = boards[2];
+		cases.add(new Case("Board.won") {
+			int run() {
+				return endgame.won();
+			}
+		});
+		cases.add(new Case("Board.won(int)") {
+			int run() {
+				int count = 0;
+				for(int p = 0; p < TWO_PLAYERS.length; p++) {
+					if(endgame.won(p)) count++;
+				}
+				return count;
+			}
+		});
+
+		/** Computer player: a fixed-depth search of every root move, so the work does not depend on a clock */
+		final Board midgame = boards[1];
+		final int midgamePlayer = midgame.getPosition().getPly() % TWO_PLAYERS.length;
+		final SearchEngine engine = new SearchEngine(layout, TWO_PLAYERS.length);
+		final BitBoard searchPosition = new BitBoard(midgame.getPosition());
+		cases.add(new Case("SearchEngine.depth" + SEARCH_DEPTH) {
+			int run() {
+				int[] rootMoves = engine.getRootMoves(searchPosition, midgamePlayer);
+				int alpha = -SearchEngine.WIN - 1;
+				int best = -1;
+				for(int i = 0; i < rootMoves.length; i++) {
+					int score = engine.scoreMove(searchPosition, midgamePlayer, rootMoves[i], SEARCH_DEPTH, alpha, Long.MAX_VALUE);
+					if(score > alpha) {
+						alpha = score;
+						best = rootMoves[i];
+					}
+				}
+				return best;
+			}
+		});
+
+		/** Rendering the midgame into an offscreen image */
+		final Surface surface = new Surface(midgame);
+		final BufferedImage image = new BufferedImage(App.SCREEN_SIZE, App.SCREEN_SIZE, BufferedImage.TYPE_INT_ARGB);
+		cases.add(new Case("Surface.draw") {
+			int run() {
+				Graphics2D g = image.createGraphics();
+				g.setColor(Color.WHITE);
+				g.fillRect(0, 0, App.SCREEN_SIZE, App.SCREEN_SIZE);
+				surface.draw(g);
+				g.dispose();
+				return image.getRGB(App.SCREEN_SIZE / 2, App.SCREEN_SIZE / 2);
+			}
+		});
+		/** Repainting one cell, as after a move or selection, with the clip set to the cell */
+		final BoardRenderer renderer = BoardRenderer.forLayout(layout);
+		final Rectangle bounds = renderer.getBounds(layout.index(0, 0));
+		cases.add(new Case("Surface.draw.cell") {
+			int run() {
+				Graphics2D g = image.createGraphics();
+				int x = bounds.x, y = bounds.y, cellSize = bounds.width;
+				g.setClip(x, y, cellSize, cellSize);
+				g.setColor(Color.WHITE);
+				g.fillRect(x, y, cellSize, cellSize);
+				surface.draw(g);
+				g.dispose();
+				return image.getRGB(x + cellSize / 2, y + cellSize / 2);
+			}
+		});
+
+		/** Finding the cell under a click, by testing every cell's ellipse and by inverting the placement */
+		final int[] clickX = new int[cells.length];
+		final int[] clickY = new int[cells.length];
+		for(int i = 0; i < cells.length; i++) {
+			Rectangle cell = renderer.getBounds(cells[i]);
+			clickX[i] = cell.x + cell.width / 2;
+			clickY[i] = cell.y + cell.height / 2;
+		}
+		cases.add(new Case("Board.getPoints.contains") {
+			int next;
+			int run() {
+				int x = clickX[next], y = clickY[next];
+				next = next == cells.length - 1 ? 0 : next + 1;
+				for(Point<HexNode<Piece>> p : midgame.getPoints()) {
+					if(p.getEllipse().contains(x, y)) return midgame.getIndex(p.getKey());
+				}
+				return -1;
+			}
+		});
+		cases.add(new Case("BoardRenderer.getCellAt") {
+			int next;
+			int run() {
+				int x = clickX[next], y = clickY[next];
+				next = next == cells.length - 1 ? 0 : next + 1;
+				return renderer.getCellAt(x, y);
+			}
+		});
+
+		for(int r : SCALING_RADII) addScalingCases(cases, r);
+		return cases;
+	}
+
+	/**
+	 * Helper method. Creates the scaling benchmarks for one radius, on the starting
+	 * position with a step of a front piece of the first player
+	 * @param cases list to add the benchmarks to
+	 * @param radius board radius
+	 */
+	private static void addScalingCases(ArrayList<Case> cases, final int radius) {
+		final Board board = new Board(radius, TWO_PLAYERS);
+		BoardLayout layout = board.getLayout();
+		int from = -1, to = -1;
+		long[] pieces = board.getPosition().getPieces(0);
+		for(int i = BoardLayout.nextSetBit(pieces, 0); i >= 0 && from < 0; i = BoardLayout.nextSetBit(pieces, i + 1)) {
+			for(int d = 0; d < BoardLayout.DIRECTIONS; d++) {
+				int nbr = layout.getNeighbor(i, d);
+				if(nbr >= 0 && board.getPosition().isEmpty(nbr)) {
+					from = i;
+					to = nbr;
+					break;
+				}
+			}
+		}
+		final int src = from, dst = to;
+		final HexNode<Piece> srcNode = board.getNode(src), dstNode = board.getNode(dst);
+		final int[] moves = new int[layout.getCellCount()];
+
+		cases.add(new Case("Scaling.Board.new.r" + radius) {
+			int run() {
+				return new Board(radius, TWO_PLAYERS).size();
+			}
+		});
+		cases.add(new Case("Scaling.Board.isValidMove.r" + radius) {
+			int run() {
+				return board.isValidMove(srcNode, dstNode) ? 1 : 0;
+			}
+		});
+		cases.add(new Case("Scaling.Board.getMoves.r" + radius) {
+			int run() {
+				return board.getMoves(src, moves);
+			}
+		});
+		cases.add(new Case("Scaling.Board.makeMove.r" + radius) {
+			int run() {
+				board.makeMove(src, dst);
+				return board.unmakeMove();
+			}
+		});
+	}
+
+	/**
+	 * Helper method. Plays a deterministic two-player greedy game, where each move
+	 * brings a piece closest to the corner of its goal, and returns boards at the
+	 * start, the middle and near the end of it
+	 * @param radius board radius
+	 * @return opening, midgame and endgame boards
+	 */
+	private static Board[] createPositions(int radius) {
+		int plies = playGreedy(new Board(radius, TWO_PLAYERS), MAX_GAME_PLIES);
+		int[] targets = {0, plies / 2, Math.max(0, plies - ENDGAME_PLIES)};
+		Board[] boards = new Board[targets.length];
+		for(int i = 0; i < targets.length; i++) {
+			boards[i] = new Board(radius, TWO_PLAYERS);
+			playGreedy(boards[i], targets[i]);
+		}
+		return boards;
+	}
+
+	/**
+	 * Helper method. Plays greedy moves on a board until a player wins or a number of plies
+	 * @param board board to play on
+	 * @param maxPlies most plies to play
+	 * @return plies played
+	 */
+	private static int playGreedy(Board board, int maxPlies) {
+		BoardLayout layout = board.getLayout();
+		MoveGenerator generator = new MoveGenerator(layout);
+		int[][] buffer = new int[1][];
+		int player = 0;
+		int ply = 0;
+		while(ply < maxPlies && board.won() < 0) {
+			int[] distances = layout.getCornerDistances(player);
+			int count = generator.getAllMoves(board.getPosition(), player, buffer, 0);
+			int[] moves = buffer[0];
+			int best = -1;
+			int bestGain = Integer.MIN_VALUE;
+			for(int i = 0; i < count; i++) {
+				int gain = distances[MoveGenerator.getSrc(moves[i])] - distances[MoveGenerator.getDst(moves[i])];
+				if(gain > bestGain) {
+					bestGain = gain;
+					best = moves[i];
+				}
+			}
+			if(best != -1) board.move(board.getNode(MoveGenerator.getSrc(best)), board.getNode(MoveGenerator.getDst(best)));
+			player = player == TWO_PLAYERS.length - 1 ? 0 : player + 1;
+			ply++;
+		}
+		return ply;
+	}
+
+	/**
+	 * Helper method. Finds the nodes holding a player's pieces
+	 * @param board board to search
+	 * @param playerIndex index of the player
+	 * @return nodes with the player's pieces
+	 */
+	private static ArrayList<HexNode<Piece>> getPieces(Board board, int playerIndex) {
+		ArrayList<HexNode<Piece>> pieces = new ArrayList<HexNode<Piece>>();
+		long[] mask = board.getPosition().getPieces(playerIndex);
+		for(int i = BoardLayout.nextSetBit(mask, 0); i >= 0; i = BoardLayout.nextSetBit(mask, i + 1)) {
+			pieces.add(board.getNode(i));
+		}
+		return pieces;
+	}
+}
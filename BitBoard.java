@@ -0,0 +1,522 @@
+import java.util.Arrays;
+
+/**
+ * A BitBoard is a compact position: one bitset per player plus a mask of empty
+ * cells, over the indices of a BoardLayout. Moves are generated for a piece by
+ * shifting its bit across the board and masking with the empty and occupied sets,
+ * so no HexNodes are touched.
+ */
+public class BitBoard {
+
+	/** Layout of the board */
+	private BoardLayout layout;
+	/** Each player's pieces */
+	private long[][] pieces;
+	/** Cells without a piece */
+	private long[] empty;
+	/** Player with a piece on each index, or -1 */
+	private byte[] owners;
+	/** Number of pieces in each player's winLocs */
+	private int[] filled;
+	/** Number of each player's own pieces in their winLocs */
+	private int[] owned;
+	/** Index of the winning player, or -1 if no player has won */
+	private int winner;
+	/** Distance of each cell from each player's goal corner */
+	private int[][] distance;
+	/** Sum of the distances of each player's pieces from their goal corner */
+	private int[] distanceSum;
+	/** Sum of the squared distances of each player's pieces from their goal corner */
+	private int[] squareSum;
+	/** Steps from each cell to each player's goal triangle */
+	private int[][] goal;
+	/** Directions of the jumps from each cell toward each player's goal triangle */
+	private byte[][] forwardJumps;
+	/** Sum of the steps of each player's pieces to their goal triangle */
+	private int[] goalSum;
+	/** Number of open jumps toward its owner's goal triangle of the piece on each index */
+	private byte[] openJumps;
+	/** Number of each player's pieces with at least one open jump toward their goal triangle */
+	private int[] forwardCount;
+	/** Neighbor and jump tables of the layout */
+	private int[] neighbors, jumps;
+	/** Zobrist key of the position. XOR of the keys of every piece on its cell */
+	private long key;
+	/** Encoded moves made with makeMove that have not been unmade */
+	private int[] undo;
+	/** Zobrist key of the position before each move on the undo stack */
+	private long[] history;
+	/** Number of moves on the undo stack */
+	private int undoSize;
+
+	/** Initial capacity of the undo stack */
+	private static final int INITIAL_UNDO_CAPACITY = 256;
+
+	/** Scratch masks for move generation */
+	private long[] occupied, frontier, next, step, reached;
+
+	/**
+	 * Constructor. Creates the starting position for a number of players. Player i
+	 * starts in the triangle opposite their winLocs.
+	 * @param layout board layout
+	 * @param numPlayers number of players
+	 */
+	public BitBoard(BoardLayout layout, int numPlayers) {
+		/** Error Handling: There must be either 2, 4, or 6 players */
+		if(numPlayers != 2 && numPlayers != 4 && numPlayers != 6) throw new IllegalArgumentException();
+
+		this.layout = layout;
+		pieces = new long[numPlayers][];
+		empty = layout.getCells().clone();
+		owners = new byte[layout.getSize()];
+		Arrays.fill(owners, (byte) -1);
+		for(int p = 0; p < numPlayers; p++) {
+			pieces[p] = layout.getTriangle(p ^ 1).clone();
+			for(int w = 0; w < empty.length; w++) empty[w] &= ~pieces[p][w];
+			for(int i = BoardLayout.nextSetBit(pieces[p], 0); i >= 0; i = BoardLayout.nextSetBit(pieces[p], i + 1))
+				owners[i] = (byte) p;
+		}
+		filled = new int[numPlayers];
+		owned = new int[numPlayers];
+		for(int p = 0; p < numPlayers; p++) {
+			long[] triangle = layout.getTriangle(p);
+			for(int q = 0; q < numPlayers; q++) {
+				int count = 0;
+				for(int w = 0; w < triangle.length; w++) count += Long.bitCount(triangle[w] & pieces[q][w]);
+				filled[p] += count;
+				if(q == p) owned[p] = count;
+			}
+		}
+		updateWinner();
+		distance = new int[numPlayers][];
+		distanceSum = new int[numPlayers];
+		squareSum = new int[numPlayers];
+		goal = new int[numPlayers][];
+		goalSum = new int[numPlayers];
+		forwardJumps = new byte[numPlayers][];
+		for(int p = 0; p < numPlayers; p++) {
+			distance[p] = layout.getCornerDistances(p);
+			goal[p] = layout.getGoalDistances(p);
+			forwardJumps[p] = layout.getForwardJumps(p);
+			for(int i = BoardLayout.nextSetBit(pieces[p], 0); i >= 0; i = BoardLayout.nextSetBit(pieces[p], i + 1)) {
+				key ^= layout.getZobrist(p, i);
+				distanceSum[p] += distance[p][i];
+				squareSum[p] += distance[p][i]*distance[p][i];
+				goalSum[p] += goal[p][i];
+			}
+		}
+		neighbors = layout.getNeighbors();
+		jumps = layout.getJumps();
+		openJumps = new byte[layout.getSize()];
+		forwardCount = new int[numPlayers];
+		for(int p = 0; p < numPlayers; p++) {
+			for(int i = BoardLayout.nextSetBit(pieces[p], 0); i >= 0; i = BoardLayout.nextSetBit(pieces[p], i + 1)) {
+				openJumps[i] = (byte) countOpenJumps(i, p);
+				if(openJumps[i] > 0) forwardCount[p]++;
+			}
+		}
+		undo = new int[INITIAL_UNDO_CAPACITY];
+		history = new long[INITIAL_UNDO_CAPACITY];
+		initScratch();
+	}
+
+	/**
+	 * Copy constructor
+	 * @param other position to copy
+	 */
+	public BitBoard(BitBoard other) {
+		layout = other.layout;
+		pieces = new long[other.pieces.length][];
+		for(int p = 0; p < pieces.length; p++) pieces[p] = other.pieces[p].clone();
+		empty = other.empty.clone();
+		owners = other.owners.clone();
+		filled = other.filled.clone();
+		owned = other.owned.clone();
+		winner = other.winner;
+		distance = other.distance;
+		distanceSum = other.distanceSum.clone();
+		squareSum = other.squareSum.clone();
+		goal = other.goal;
+		forwardJumps = other.forwardJumps;
+		goalSum = other.goalSum.clone();
+		openJumps = other.openJumps.clone();
+		forwardCount = other.forwardCount.clone();
+		neighbors = other.neighbors;
+		jumps = other.jumps;
+		key = other.key;
+		undo = other.undo.clone();
+		history = other.history.clone();
+		undoSize = other.undoSize;
+		initScratch();
+	}
+
+	/**
+	 * Helper method. Allocates scratch masks
+	 */
+	private void initScratch() {
+		int words = layout.getWords();
+		occupied = new long[words];
+		frontier = new long[words];
+		next = new long[words];
+		step = new long[words];
+		reached = new long[words];
+	}
+
+	/**
+	 * Makes a move and records it on the undo stack. The move is not checked for validity.
+	 * @param src cell index of the piece
+	 * @param dst empty cell index to move to
+	 */
+	public void makeMove(int src, int dst) {
+		if(undoSize == undo.length) {
+			undo = Arrays.copyOf(undo, undo.length*2);
+			history = Arrays.copyOf(history, history.length*2);
+		}
+		history[undoSize] = key;
+		undo[undoSize++] = MoveGenerator.encode(src, dst);
+		move(src, dst);
+	}
+
+	/**
+	 * Unmakes the last move made with makeMove
+	 * @return encoded move that was unmade
+	 */
+	public int unmakeMove() {
+		/** Error Handling: There must be a move to unmake */
+		if(undoSize == 0) throw new IllegalStateException();
+
+		int move = undo[--undoSize];
+		move(MoveGenerator.getDst(move), MoveGenerator.getSrc(move));
+		return move;
+	}
+
+	/**
+	 * Returns the Zobrist key of the position. Equal positions have equal keys, and
+	 * different positions almost never do.
+	 * @return 64-bit position key
+	 */
+	public long getKey() {
+		return key;
+	}
+
+	/**
+	 * Counts the earlier positions on the undo stack that are the same as this one with
+	 * the same player to move
+	 * @return number of times this position has been seen before
+	 */
+	public int getRepetitions() {
+		int count = 0;
+		for(int i = undoSize - pieces.length; i >= 0; i -= pieces.length) {
+			if(history[i] == key) count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns a move on the undo stack
+	 * @param ply number of moves made before it
+	 * @return encoded move
+	 */
+	public int getMove(int ply) {
+		return undo[ply];
+	}
+
+	/**
+	 * Returns the Zobrist key the position had before a move on the undo stack
+	 * @param ply number of moves made before it
+	 * @return 64-bit position key
+	 */
+	public long getKey(int ply) {
+		return ply == undoSize ? key : history[ply];
+	}
+
+	/**
+	 * Returns the number of moves on the undo stack
+	 * @return number of moves made
+	 */
+	public int getPly() {
+		return undoSize;
+	}
+
+	/**
+	 * Moves the piece on one cell to another. The move is not checked for validity.
+	 * @param src cell index of the piece
+	 * @param dst empty cell index to move to
+	 */
+	public void move(int src, int dst) {
+		int player = owners[src];
+		/** Lift the piece, then put it down, updating the jumps that pass over or land on each cell */
+		if(openJumps[src] > 0) forwardCount[player]--;
+		openJumps[src] = 0;
+		BoardLayout.clearBit(pieces[player], src);
+		BoardLayout.setBit(empty, src);
+		owners[src] = -1;
+		updateJumpsNear(src, -1);
+		BoardLayout.setBit(pieces[player], dst);
+		BoardLayout.clearBit(empty, dst);
+		owners[dst] = (byte) player;
+		updateJumpsNear(dst, 1);
+		openJumps[dst] = (byte) countOpenJumps(dst, player);
+		if(openJumps[dst] > 0) forwardCount[player]++;
+		key ^= layout.getZobrist(player, src) ^ layout.getZobrist(player, dst);
+
+		/** Update distance terms by the change at the two cells */
+		int[] dist = distance[player];
+		distanceSum[player] += dist[dst] - dist[src];
+		squareSum[player] += dist[dst]*dist[dst] - dist[src]*dist[src];
+		goalSum[player] += goal[player][dst] - goal[player][src];
+
+		/** Update win counters of the triangles left and entered */
+		int from = layout.getTriangleOf(src);
+		int to = layout.getTriangleOf(dst);
+		if(from == to) return;
+		if(from >= 0 && from < filled.length) {
+			filled[from]--;
+			if(from == player) owned[from]--;
+		}
+		if(to >= 0 && to < filled.length) {
+			filled[to]++;
+			if(to == player) owned[to]++;
+		}
+		updateWinner();
+	}
+
+	/**
+	 * Helper method. Updates the open forward jumps of the pieces around a cell that
+	 * was just filled or emptied. Only jumps over the cell or onto it can change: a
+	 * filled cell opens jumps over it and closes jumps onto it, and an emptied cell
+	 * does the opposite.
+	 * @param cell cell whose occupancy changed
+	 * @param change 1 if a piece was put on the cell, -1 if one was taken off
+	 */
+	private void updateJumpsNear(int cell, int change) {
+		int base = cell*BoardLayout.DIRECTIONS;
+		for(int d = 0; d < BoardLayout.DIRECTIONS; d++) {
+			int nbr = neighbors[base + d];
+			if(nbr < 0) continue;
+			/** Direction from the neighbor or jumping piece back toward the cell */
+			int back = d < 3 ? d + 3 : d - 3;
+			int owner = owners[nbr];
+			if(owner >= 0 && (forwardJumps[owner][nbr] & (1 << back)) != 0) {
+				int land = neighbors[base + back];
+				if(land >= 0 && owners[land] < 0) addOpenJumps(nbr, owner, change);
+			}
+			int far = jumps[base + d];
+			if(far < 0) continue;
+			owner = owners[far];
+			if(owner >= 0 && (forwardJumps[owner][far] & (1 << back)) != 0 && owners[nbr] >= 0)
+				addOpenJumps(far, owner, -change);
+		}
+	}
+
+	/**
+	 * Helper method. Changes the number of open forward jumps of a piece, and its
+	 * owner's count of pieces with any
+	 * @param cell cell index of the piece
+	 * @param player owner of the piece
+	 * @param change jumps opened, or closed if negative
+	 */
+	private void addOpenJumps(int cell, int player, int change) {
+		int before = openJumps[cell];
+		openJumps[cell] = (byte) (before + change);
+		if(before == 0) forwardCount[player]++;
+		else if(before + change == 0) forwardCount[player]--;
+	}
+
+	/**
+	 * Helper method. Counts the jumps open to the piece on a cell that land nearer its
+	 * owner's goal triangle
+	 * @param cell cell index of the piece
+	 * @param player owner of the piece
+	 * @return number of open forward jumps
+	 */
+	private int countOpenJumps(int cell, int player) {
+		int base = cell*BoardLayout.DIRECTIONS;
+		int directions = forwardJumps[player][cell];
+		int count = 0;
+		while(directions != 0) {
+			int d = Integer.numberOfTrailingZeros(directions);
+			directions &= directions - 1;
+			if(owners[jumps[base + d]] < 0 && owners[neighbors[base + d]] >= 0) count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Helper method. Recomputes the winner from the win counters. A player has won if
+	 * every winLoc contains a piece and over half of those pieces are the player's.
+	 */
+	private void updateWinner() {
+		int size = layout.getTriangleSize();
+		winner = -1;
+		for(int p = 0; p < filled.length; p++) {
+			if(filled[p] == size && owned[p]*2 > size) {
+				winner = p;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the winning player
+	 * @return winning player's index if there is a winner, -1 otherwise
+	 */
+	public int getWinner() {
+		return winner;
+	}
+
+	/**
+	 * Determines if a single player has won the game
+	 * @param playerIndex index of player
+	 * @return true if the given player has won, false otherwise
+	 */
+	public boolean hasWon(int playerIndex) {
+		return filled[playerIndex] == layout.getTriangleSize() && owned[playerIndex]*2 > layout.getTriangleSize();
+	}
+
+	/**
+	 * Returns the number of a player's own pieces in their winLocs
+	 * @param playerIndex index of player
+	 * @return pieces home
+	 */
+	public int getHomeCount(int playerIndex) {
+		return owned[playerIndex];
+	}
+
+	/**
+	 * Returns the sum of the distances of a player's pieces from their goal corner.
+	 * Updated on every move, so reading it is O(1).
+	 * @param playerIndex index of player
+	 * @return total distance
+	 */
+	public int getDistanceSum(int playerIndex) {
+		return distanceSum[playerIndex];
+	}
+
+	/**
+	 * Returns the sum of the squared distances of a player's pieces from their goal
+	 * corner. Updated on every move, so reading it is O(1).
+	 * @param playerIndex index of player
+	 * @return total squared distance
+	 */
+	public int getSquaredDistanceSum(int playerIndex) {
+		return squareSum[playerIndex];
+	}
+
+	/**
+	 * Returns the sum of the steps of a player's pieces to their goal triangle
+	 * @param playerIndex index of player
+	 * @return total steps
+	 */
+	public int getGoalSum(int playerIndex) {
+		return goalSum[playerIndex];
+	}
+
+	/**
+	 * Returns a jump-aware estimate of the moves a player needs to bring every piece
+	 * into their goal triangle: the steps of each piece, less one for each piece
+	 * that can jump toward the goal right now. A move only changes which pieces can
+	 * jump near its two cells, so the estimate is kept up to date locally on every
+	 * move and reading it is O(1).
+	 * @param playerIndex index of player
+	 * @return estimated moves
+	 */
+	public int getHopEstimate(int playerIndex) {
+		return goalSum[playerIndex] - forwardCount[playerIndex];
+	}
+
+	/**
+	 * Finds every cell the piece on a given cell can move to: empty neighbors, plus
+	 * every empty cell reachable by a chain of jumps.
+	 * @param src cell index of the piece
+	 * @param moves receives the mask of destinations. Must hold layout.getWords() longs
+	 */
+	public void getMoves(int src, long[] moves) {
+		long[] cells = layout.getCells();
+		int words = moves.length;
+		for(int w = 0; w < words; w++) {
+			occupied[w] = cells[w] & ~empty[w];
+			frontier[w] = 0;
+			moves[w] = 0;
+		}
+		BoardLayout.setBit(frontier, src);
+
+		/** Add valid immediate moves */
+		for(int d = 0; d < BoardLayout.DIRECTIONS; d++) {
+			BoardLayout.shift(frontier, layout.getOffset(d), step);
+			for(int w = 0; w < words; w++) moves[w] |= step[w] & empty[w];
+		}
+
+		/** Add valid jumps. Each pass jumps from every cell first reached by the last pass */
+		for(int w = 0; w < words; w++) reached[w] = 0;
+		boolean found = true;
+		while(found) {
+			found = false;
+			for(int w = 0; w < words; w++) next[w] = 0;
+			for(int d = 0; d < BoardLayout.DIRECTIONS; d++) {
+				int offset = layout.getOffset(d);
+				BoardLayout.shift(frontier, offset, step);
+				for(int w = 0; w < words; w++) step[w] &= occupied[w];
+				BoardLayout.shift(step, offset, step);
+				for(int w = 0; w < words; w++) next[w] |= step[w] & empty[w];
+			}
+			for(int w = 0; w < words; w++) {
+				frontier[w] = next[w] & ~reached[w];
+				reached[w] |= frontier[w];
+				if(frontier[w] != 0) found = true;
+			}
+		}
+		for(int w = 0; w < words; w++) moves[w] |= reached[w];
+	}
+
+	/**
+	 * Returns the index of the player with a piece on a cell
+	 * @param index cell index
+	 * @return player index, or -1 if the cell is empty
+	 */
+	public int getOwner(int index) {
+		return owners[index];
+	}
+
+	/**
+	 * Determines if a cell is empty
+	 * @param index cell index
+	 * @return true if the cell is on the board and has no piece, false otherwise
+	 */
+	public boolean isEmpty(int index) {
+		return index >= 0 && index < layout.getSize() && BoardLayout.testBit(empty, index);
+	}
+
+	/**
+	 * Returns a player's pieces. The array is live and must not be modified.
+	 * @param playerIndex index of player
+	 * @return mask of player's pieces
+	 */
+	public long[] getPieces(int playerIndex) {
+		return pieces[playerIndex];
+	}
+
+	/**
+	 * Returns the empty cells. The array is live and must not be modified.
+	 * @return mask of empty cells
+	 */
+	public long[] getEmpty() {
+		return empty;
+	}
+
+	/**
+	 * Returns the number of players
+	 * @return number of players
+	 */
+	public int getNumPlayers() {
+		return pieces.length;
+	}
+
+	/**
+	 * Returns the board layout
+	 * @return layout
+	 */
+	public BoardLayout getLayout() {
+		return layout;
+	}
+}
@@ -1,135 +1,145 @@
 import java.awt.Color;
 import java.util.ArrayList;
 
+/**
+ * A game board. The position is kept in a BitBoard, so a board costs a few bytes
+ * per cell and moves are generated by MoveGenerator in time proportional to the
+ * cells a piece can reach. The HexLattice of HexNodes is a view that is only
+ * built the first time a node is asked for, by the window or by the reference
+ * move generation, and is kept in step with the position from then on.
+ */
 public class Board {
 
-	/** Board data structure */
-	private HexLattice<Piece> board;
 	/** Array of Players' Colors */
 	private Color[] players;
 	/** Board Radius */
 	private int radius;
-	/** Win Locations */
-	private ArrayList<ArrayList<HexNode<Piece>>> winLocs;
+	/** Bit layout of the board's cells */
+	private BoardLayout layout;
+	/** Bitboard position */
+	private BitBoard position;
+	/** Immutable copy of the position, replaced after every game move so other threads can read it */
+	private volatile PositionSnapshot snapshot;
+	/** Lattice view of the board, or null until a node is first asked for */
+	private HexLattice<Piece> board;
+	/** Nodes of the lattice view by cell index */
+	private HexNode<Piece>[] nodes;
+	/** Scratch buffer for move validation */
+	private int[] moveBuffer;
+	/** Allocation-free move generator over the bitboard */
+	private MoveGenerator generator;
+	/** Listeners told of every game move */
+	private ArrayList<BoardListener> listeners;
+	/** Nodes visited by the reference move generation, to be reset when it finishes */
+	private ArrayList<HexNode<Piece>> visited;
 
 	/**
 	 * Constructor. Creates a new board with a given radius
 	 * @param radius radius of the center area
 	 */
+	@SuppressWarnings("unchecked")
 	public Board(int radius, Color[] players) {
-		/** Error Handling: Radius must be at least 2 */
-		if(radius < 2) throw new IllegalArgumentException();
+		/** Error Handling: Radius must be at least 2, and small enough for moves to encode its cells */
+		if(radius < 2 || radius > BoardLayout.MAX_RADIUS) throw new IllegalArgumentException();
 		/** Error Handling: There must be either 2, 4, or 6 players */
 		if(players.length != 2 && players.length != 4 && players.length != 6) throw new IllegalArgumentException();
 
-		board = new HexLattice<Piece>();
 		this.players = players;
 		this.radius = radius;
 
-		winLocs = new ArrayList<ArrayList<HexNode<Piece>>>();
-		for(int i = 0; i < players.length; i++) {
-			winLocs.add(new ArrayList<HexNode<Piece>>());
-		}
-
-		createCenter();
-		createHomes();
+		layout = BoardLayout.forRadius(radius);
+		position = new BitBoard(layout, players.length);
+		snapshot = PositionSnapshot.of(position);
+		nodes = (HexNode<Piece>[]) new HexNode<?>[layout.getSize()];
+		moveBuffer = new int[layout.getCellCount()];
+		generator = new MoveGenerator(layout);
+		listeners = new ArrayList<BoardListener>();
+		visited = new ArrayList<HexNode<Piece>>();
 	}
 
 	/**
-	 * Helper method. Creates center area of the board
-	 * @param radius radius of the center area
+	 * Moves a source node to a destination node if the move is valid. This is a
+	 * game move: a new snapshot is published and the listeners are told.
+	 * 
+	 * @param src Node to move
+	 * @param dst Location to move to
+	 * @return true if move was valid, false otherwise
 	 */
-	private void createCenter() {
-		for(int x = -1*(radius-1); x <= radius-1; x++) {
-			for(int y = -1*(radius-1); y <= radius-1; y++) {
-				if(-1*(x+y) >= -1*(radius-1) && -1*(x+y) <= radius-1)
-					board.insert(new HexNode<Piece>(null, x, y, -1*(x+y)));
-			}
-		}
+	public boolean move(HexNode<Piece> src, HexNode<Piece> dst) {
+		/** Error Handling: Moves made with makeMove must be unmade before the game goes on */
+		if(position.getPly() != snapshot.getPly()) throw new IllegalStateException();
+		if(!isValidMove(src, dst)) return false;
+
+		int from = getIndex(src), to = getIndex(dst);
+		makeMove(from, to);
+		snapshot = snapshot.after(position);
+		firePieceMoved(from, to);
+		return true;
 	}
 
 	/**
-	 * Helper method. Creates the triangle areas of the board
-	 * @param radius radius of the center area
+	 * Makes a move without checking that it is valid and records it so that it
+	 * can be unmade. For search code that only makes moves it has generated, so
+	 * no snapshot is published and the listeners are not told. Every move made
+	 * this way must be unmade before the next call to move.
+	 * 
+	 * @param src cell index of piece to move
+	 * @param dst empty cell index to move to
 	 */
-	private void createHomes() {
-		/** x */
-		for(int x = radius; x <= 2*(radius-1); x++) {
-			for(int z = -1*(radius-1); z < -1*Math.abs(x-radius); z++) {
-				if(players.length == 6) {
-					HexNode<Piece> n = new HexNode<Piece>(new Piece(players[5]), x, -1*(x+z), z);
-					winLocs.get(4).add(n);
-					board.insert(n);
-				}
-				else
-					board.insert(new HexNode<Piece>(null, x, -1*(x+z), z));
-			}
-		}
-		/** -x */
-		for(int x = -1*radius; x >= -2*(radius-1); x--) {
-			for(int z = radius-1; z > Math.abs(x+radius); z--) {
-				if(players.length == 6) {
-					HexNode<Piece> n = new HexNode<Piece>(new Piece(players[4]), x, -1*(x+z), z);
-					winLocs.get(5).add(n);
-					board.insert(n);
-				}
-				else
-					board.insert(new HexNode<Piece>(null, x, -1*(x+z), z));
-			}
-		}
-		/** y */
-		for(int y = radius; y <= 2*(radius-1); y++) {
-			for(int x = -1*(radius-1); x < -1*Math.abs(y-radius); x++) {
-				if(players.length != 2) {
-					HexNode<Piece> n = new HexNode<Piece>(new Piece(players[3]), x, y, -1*(x+y));
-					winLocs.get(2).add(n);
-					board.insert(n);
-				}
-				else
-					board.insert(new HexNode<Piece>(null, x, y, -1*(x+y)));
-			}
-		}
-		/** -y */
-		for(int y = -1*radius; y >= -2*(radius-1); y--) {
-			for(int x = radius-1; x > Math.abs(y+radius); x--) {
-				if(players.length != 2) {
-					HexNode<Piece> n = new HexNode<Piece>(new Piece(players[2]), x, y, -1*(x+y));
-					winLocs.get(3).add(n);
-					board.insert(n);
-				}
-				else
-					board.insert(new HexNode<Piece>(null, x, y, -1*(x+y)));
-			}
-		}
-		/** z */
-		for(int z = radius; z <= 2*(radius-1); z++) {
-			for(int y = -1*(radius-1); y < -1*Math.abs(z-radius); y++) {
-				HexNode<Piece> n = new HexNode<Piece>(new Piece(players[1]), -1*(y+z), y, z);
-				winLocs.get(0).add(n);
-				board.insert(n);
-			}
-		}
-		/** -z */
-		for(int z = -1*radius; z >= -2*(radius-1); z--) {
-			for(int y = radius-1; y > Math.abs(z+radius); y--) {
-				HexNode<Piece> n = new HexNode<Piece>(new Piece(players[0]), -1*(y+z), y, z);
-				winLocs.get(1).add(n);
-				board.insert(n);
-			}
-		}
+	public void makeMove(int src, int dst) {
+		flipNodes(src, dst);
+		position.makeMove(src, dst);
 	}
 
 	/**
-	 * Moves a source node to a destination node if the move is valid.
+	 * Unmakes the last move made with makeMove. Game moves cannot be unmade.
 	 * 
-	 * @param src Node to move
-	 * @param dst Location to move to
-	 * @return true if move was valid, false otherwise
+	 * @return encoded move that was unmade
 	 */
-	public boolean move(HexNode<Piece> src, HexNode<Piece> dst) {
-		if(!isValidMove(src, dst)) return false;
-		board.flipNodes(src, dst);
-		return true;
+	public int unmakeMove() {
+		/** Error Handling: There must be a move made with makeMove to unmake */
+		if(position.getPly() <= snapshot.getPly()) throw new IllegalStateException();
+
+		int move = position.unmakeMove();
+		flipNodes(MoveGenerator.getDst(move), MoveGenerator.getSrc(move));
+		return move;
+	}
+
+	/**
+	 * Helper method. Moves the piece between two cells' nodes, if the lattice view
+	 * has been built
+	 * @param src cell index that the piece leaves
+	 * @param dst cell index that the piece moves to
+	 */
+	private void flipNodes(int src, int dst) {
+		if(board != null) board.flipNodes(nodes[src], nodes[dst]);
+	}
+
+	/**
+	 * Adds a listener to be told of every game move made on the board
+	 * @param listener listener to add
+	 */
+	public void addListener(BoardListener listener) {
+		/** Error Handling: Listener cannot be null */
+		if(listener == null) throw new IllegalArgumentException();
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener added with addListener
+	 * @param listener listener to remove
+	 */
+	public void removeListener(BoardListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Helper method. Tells the listeners that a piece moved
+	 * @param src cell index that the piece left
+	 * @param dst cell index that the piece moved to
+	 */
+	private void firePieceMoved(int src, int dst) {
+		for(int i = 0; i < listeners.size(); i++) listeners.get(i).pieceMoved(src, dst);
 	}
 
 	/**
@@ -145,23 +155,39 @@ public class Board {
 		/** Must move to an empty space. Must move a non-empty piece */
 		if(src.getKey() == null || dst.getKey() != null) return false;
 
-		/** Searches through valid move list */
-		for(HexNode<Piece> n : getValidMoves(src)) {
-			if(dst.equals(n)) return true;
+		/** Generates the piece's destinations and checks for dst */
+		int target = getIndex(dst);
+		int count = generator.getMoves(position, getIndex(src), moveBuffer, 0);
+		for(int i = 0; i < count; i++) {
+			if(moveBuffer[i] == target) return true;
 		}
-		/** Returns false if move not found */
 		return false;
 	}
 
 	/**
-	 * Finds all valid moves on the board for a given node to move to.
+	 * Finds all valid moves for the piece on a given cell without allocating.
+	 * 
+	 * @param src cell index of piece to move
+	 * @param moves buffer receiving destination cell indices. Must be able to
+	 * hold a destination for every cell on the board.
+	 * @return number of destinations written to moves
+	 */
+	public int getMoves(int src, int[] moves) {
+		return generator.getMoves(position, src, moves, 0);
+	}
+
+	/**
+	 * Finds all valid moves on the board for a given node to move to by walking
+	 * the HexLattice. This is the reference implementation for the bitboard, and is
+	 * package-private so that the benchmarks can compare the two.
 	 * 
 	 * @param src Node to move
 	 * @return List of valid nodes for src node to move to
 	 */
-	private ArrayList<HexNode<Piece>> getValidMoves(HexNode<Piece> src) {
+	ArrayList<HexNode<Piece>> getValidMoves(HexNode<Piece> src) {
 		ArrayList<HexNode<Piece>> validNodes = new ArrayList<HexNode<Piece>>();
 		src.visit(true);
+		visited.add(src);
 
 		/** Add valid immediate moves */
 		for(HexNode<Piece> p : src.getNeighbors()) {
@@ -171,7 +197,8 @@ public class Board {
 		/** Add valid jumps */
 		validNodes.addAll(getValidJumps(src, validNodes));
 		/** Return list */
-		board.resetVisited();
+		for(HexNode<Piece> n : visited) n.visit(false);
+		visited.clear();
 		return validNodes;
 	}
 
@@ -194,6 +221,7 @@ public class Board {
 					/** Add to possible jump list */
 					validNodes.add(jmp);
 					jmp.visit(true);
+					visited.add(jmp);
 					/** Recursively check for jumps from the jmp position */
 					validNodes.addAll(getValidJumps(jmp, validNodes));
 				}
@@ -212,52 +240,123 @@ public class Board {
 	private HexNode<Piece> getJumpNode(HexNode<Piece> src, HexNode<Piece> toJump) {
 		/** Error Handling */
 		if(src == null || toJump.getKey() == null) throw new IllegalArgumentException();
-		if(getDistance(src, toJump) != 1) throw new IllegalArgumentException();
-
 
-		/** Returns node next in line */
-		return board.get(toJump.getX() + (toJump.getX() - src.getX()),
-				toJump.getY() + (toJump.getY() - src.getY()),
-				toJump.getZ() + (toJump.getZ() - src.getZ()));
+		/** Finds the direction of toJump and returns the landing cell from the jump table */
+		int from = getIndex(src);
+		int over = getIndex(toJump);
+		for(int d = 0; d < BoardLayout.DIRECTIONS; d++) {
+			if(layout.getNeighbor(from, d) == over) return getNode(layout.getJump(from, d));
+		}
+		/** Error Handling: toJump must be adjacent to src */
+		throw new IllegalArgumentException();
 	}
 
 	/**
-	 * Determines if any player has won. Calls helper method won(int playerIndex)
-	 * to check if each individual player has won.
+	 * Determines if any player has won. Reads the win counters that the bitboard
+	 * updates on every move, so this does not scan the winLocs.
 	 * 
 	 * @return winning player's index if there is a winner, -1 otherwise
 	 */
 	public int won() {
-		for(int playerIndex = 0; playerIndex < players.length; playerIndex++) {
-			if(won(playerIndex)) return playerIndex;
-		}
-		return -1;
+		return position.getWinner();
 	}
 	
 	/**
-	 * Helper method for won(). Determines if a single player has won the game.
+	 * Determines if a single player has won the game.
 	 * A player has won if both (1) every winLoc contains a piece and (2) over
 	 * half of those pieces are the player's.
 	 * 
 	 * @param playerIndex index of the player from the players array
 	 * @return true if the given player has won, false otherwise
 	 */
-	private boolean won(int playerIndex) {
-		/** Number of player's pieces in winLocs */
-		double playerCount = 0;
-		
-		/** For each winLoc... */
-		for(HexNode<Piece> n : winLocs.get(playerIndex)) {
-			/** If any of the winLocs are empty, the player hasn't won */
-			if(n.getKey() == null) return false;
-			/** If there is a player's piece in this winLoc, increment count */
-			if(n.getKey().getColor().equals(players[playerIndex].darker()))
-				playerCount++;
+	public boolean won(int playerIndex) {
+		return position.hasWon(playerIndex);
+	}
+
+	/**
+	 * Returns the cell index of a node in the board layout
+	 * @param n node on the board
+	 * @return cell index
+	 */
+	public int getIndex(HexNode<Piece> n) {
+		return layout.index(n.getX(), n.getY());
+	}
+
+	/**
+	 * Returns the node at a cell index. The first call builds the lattice view
+	 * @param index cell index
+	 * @return node, or null if the index is not a cell on the board
+	 */
+	public HexNode<Piece> getNode(int index) {
+		if(index < 0 || index >= nodes.length || !layout.isCell(index)) return null;
+		if(board == null) createLattice();
+		return nodes[index];
+	}
+
+	/**
+	 * Helper method. Builds the lattice view of the position, one node per cell
+	 * with its neighbors linked, and indexes the nodes by cell index
+	 */
+	private void createLattice() {
+		board = new HexLattice<Piece>();
+		long[] cells = layout.getCells();
+		for(int i = BoardLayout.nextSetBit(cells, 0); i >= 0; i = BoardLayout.nextSetBit(cells, i + 1)) {
+			int owner = position.getOwner(i);
+			Piece piece = owner < 0 ? null : new Piece(players[owner]);
+			nodes[i] = new HexNode<Piece>(piece, layout.getX(i), layout.getY(i), layout.getZ(i));
+			board.insert(nodes[i]);
 		}
-		
-		/** If more then 50% of the winLocs are player's pieces, that player wins */
-		if((playerCount / (double) winLocs.get(playerIndex).size()) > 0.5) return true;
-		else return false;
+	}
+
+	/**
+	 * Returns the bitboard position. It is updated in place by every move.
+	 * @return position
+	 */
+	public BitBoard getPosition() {
+		return position;
+	}
+
+	/**
+	 * Returns an immutable copy of the current position. Safe to call from any thread;
+	 * the board publishes a new snapshot after every game move.
+	 * @return position snapshot
+	 */
+	public PositionSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Returns the color of a player
+	 * @param playerIndex index of the player
+	 * @return player's color
+	 */
+	public Color getPlayer(int playerIndex) {
+		return players[playerIndex];
+	}
+
+	/**
+	 * Returns the Zobrist key of the current position
+	 * @return 64-bit position key
+	 */
+	public long getKey() {
+		return position.getKey();
+	}
+
+	/**
+	 * Counts how many times the current position, with the same player to move,
+	 * has already occurred in this game
+	 * @return number of earlier occurrences
+	 */
+	public int getRepetitions() {
+		return position.getRepetitions();
+	}
+
+	/**
+	 * Returns the bit layout of the board
+	 * @return layout
+	 */
+	public BoardLayout getLayout() {
+		return layout;
 	}
 
 	/**
@@ -265,7 +364,7 @@ public class Board {
 	 * @return size of board
 	 */
 	public int size() {
-		return board.getAllNodes().size();
+		return layout.getCellCount();
 	}
 
 	/**
@@ -276,7 +375,7 @@ public class Board {
 	 * @return distance between n1 and n2
 	 */
 	public int getDistance(HexNode<Piece> n1, HexNode<Piece> n2) {
-		return board.getDistance(n1, n2);
+		return layout.getDistance(getIndex(n1), getIndex(n2));
 	}
 	
 	/**
@@ -286,9 +385,9 @@ public class Board {
 	 */
 	public ArrayList<Point<HexNode<Piece>>> getPlayerPoints(int playerIndex) {
 		ArrayList<Point<HexNode<Piece>>> pts = new ArrayList<Point<HexNode<Piece>>>();
-		for(HexNode<Piece> n : board.getAllNodes()) {
-			if(n.getKey() != null && n.getKey().getPlayer() == players[playerIndex])
-				pts.add(n.pointConversion());
+		long[] pieces = position.getPieces(playerIndex);
+		for(int i = BoardLayout.nextSetBit(pieces, 0); i >= 0; i = BoardLayout.nextSetBit(pieces, i + 1)) {
+			pts.add(getNode(i).pointConversion());
 		}
 		return pts;
 	}
@@ -304,14 +403,17 @@ public class Board {
 		if(point == null || point.getKey() == null) throw new IllegalArgumentException();
 		
 		int shortestDistance = radius*2;
-		Point<HexNode<Piece>> nearestPoint = null;
-		
-		for(Point<HexNode<Piece>> p : getPoints()) {
-			if(p.getKey().getKey() == null && getDistance(p.getKey(), point.getKey()) < shortestDistance) {
-				shortestDistance = getDistance(p.getKey(), point.getKey());
-				nearestPoint = p;
+		int center = getIndex(point.getKey());
+		int nearest = -1;
+
+		long[] cells = layout.getCells();
+		for(int i = BoardLayout.nextSetBit(cells, 0); i >= 0; i = BoardLayout.nextSetBit(cells, i + 1)) {
+			if(position.isEmpty(i) && layout.getDistance(i, center) < shortestDistance) {
+				shortestDistance = layout.getDistance(i, center);
+				nearest = i;
 			}
 		}
+		Point<HexNode<Piece>> nearestPoint = nearest < 0 ? null : getNode(nearest).pointConversion();
 		return nearestPoint;
 	}
 
@@ -321,8 +423,9 @@ public class Board {
 	 */
 	public ArrayList<Point<HexNode<Piece>>> getPoints() {
 		ArrayList<Point<HexNode<Piece>>> pts = new ArrayList<Point<HexNode<Piece>>>();
-		for(HexNode<Piece> n : board.getAllNodes()) {
-			pts.add(n.pointConversion());
+		long[] cells = layout.getCells();
+		for(int i = BoardLayout.nextSetBit(cells, 0); i >= 0; i = BoardLayout.nextSetBit(cells, i + 1)) {
+			pts.add(getNode(i).pointConversion());
 		}
 		return pts;
 	}
@@ -333,6 +436,11 @@ public class Board {
 	 * @return list of winLocs for a given player
 	 */
 	public ArrayList<HexNode<Piece>> getWinLocs(int playerIndex) {
-		return winLocs.get(playerIndex);
+		ArrayList<HexNode<Piece>> winLocs = new ArrayList<HexNode<Piece>>();
+		long[] triangle = layout.getTriangle(playerIndex);
+		for(int i = BoardLayout.nextSetBit(triangle, 0); i >= 0; i = BoardLayout.nextSetBit(triangle, i + 1)) {
+			winLocs.add(getNode(i));
+		}
+		return winLocs;
 	}
 }
\ No newline at end of file
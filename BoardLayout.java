@@ -0,0 +1,537 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+
+/**
+ * A BoardLayout maps the cells of a star board of a given radius onto bit
+ * positions. Cells are laid out row by row on a padded (x,y) rhombus, so each
+ * of the six hex directions is a constant index offset and stepping a whole set
+ * of cells one space in a direction is a single shift. The padding column keeps
+ * shifts from wrapping from the end of one row onto the start of the next.
+ *
+ * Layouts are immutable and shared between all boards with the same radius.
+ */
+public class BoardLayout {
+
+	/** Number of hex directions */
+	public static final int DIRECTIONS = 6;
+	/** (dx,dy) of each direction, in order around the hexagon. Direction d is opposite d+3 */
+	private static final int[][] DIRECTION_STEPS = {
+		{1, 0}, {1, -1}, {0, -1}, {-1, 0}, {-1, 1}, {0, 1}
+	};
+
+	/** Largest radius. MoveGenerator encodes a move in one int, so every index must fit in 16 bits */
+	public static final int MAX_RADIUS = 64;
+	/** Seed of the Zobrist keys. Fixed so that keys are the same in every run */
+	private static final long ZOBRIST_SEED = 0x43484B5253L;
+
+	/** Layouts that have already been built, by radius */
+	private static final HashMap<Integer, BoardLayout> layouts = new HashMap<Integer, BoardLayout>();
+
+	/** Board Radius */
+	private int radius;
+	/** Largest absolute value of any coordinate on the board */
+	private int extent;
+	/** Number of indices per row, including the padding column */
+	private int width;
+	/** Number of indices in the layout */
+	private int size;
+	/** Number of longs needed to hold one bit per index */
+	private int words;
+	/** Number of cells on the board */
+	private int cellCount;
+	/** Index offset of each direction */
+	private int[] offsets;
+	/** Mask of indices that are cells on the board */
+	private long[] cells;
+	/** Index of each cell, numbered 0 to cellCount-1 in index order */
+	private int[] cellIndices;
+	/** Number of the cell at each index, or -1 if the index is not a cell */
+	private int[] cellNumbers;
+	/** Masks of the six home triangles, in the same order as Board's winLocs */
+	private long[][] triangles;
+	/** Home triangle of each index, or -1 if the index is not in a home triangle */
+	private byte[] triangleOf;
+	/** Number of cells in each home triangle */
+	private int triangleSize;
+	/** Adjacent cell of each index in each direction, at index*DIRECTIONS + direction. -1 if off the board */
+	private int[] neighbors;
+	/** Cell landed on by jumping the adjacent cell in each direction, laid out as neighbors. -1 if off the board */
+	private int[] jumps;
+	/** Random key of each (player, index) pair, at player*size + index */
+	private long[] zobrist;
+	/** Distance of each index from the corner of each home triangle. 0 for indices off the board */
+	private int[][] cornerDistances;
+	/** Steps from each index to the nearest cell of each home triangle. 0 inside the triangle and off the board */
+	private int[][] goalDistances;
+	/** Directions of the jumps from each index that land nearer each home triangle, one bit per direction */
+	private byte[][] forwardJumps;
+
+	/**
+	 * Returns the layout for a given radius, building it the first time it is needed
+	 * @param radius radius of the center area
+	 * @return layout for the radius
+	 */
+	public static synchronized BoardLayout forRadius(int radius) {
+		BoardLayout layout = layouts.get(radius);
+		if(layout == null) {
+			layout = new BoardLayout(radius);
+			layouts.put(radius, layout);
+		}
+		return layout;
+	}
+
+	/**
+	 * Constructor. Builds the layout for a given radius
+	 * @param radius radius of the center area
+	 */
+	private BoardLayout(int radius) {
+		/** Error Handling: Radius must be at least 2, and at most MAX_RADIUS */
+		if(radius < 2 || radius > MAX_RADIUS) throw new IllegalArgumentException("Bad radius " + radius);
+
+		this.radius = radius;
+		extent = 2*(radius-1);
+		width = 2*extent + 2;
+		size = width*(2*extent + 1);
+		words = (size + 63) / 64;
+
+		offsets = new int[DIRECTIONS];
+		for(int d = 0; d < DIRECTIONS; d++)
+			offsets[d] = DIRECTION_STEPS[d][0] + DIRECTION_STEPS[d][1]*width;
+
+		cells = new long[words];
+		triangles = new long[6][words];
+		triangleOf = new byte[size];
+		Arrays.fill(triangleOf, (byte) -1);
+		for(int y = -extent; y <= extent; y++) {
+			for(int x = -extent; x <= extent; x++) {
+				int z = -1*(x+y);
+				/** The star is the union of two large triangles */
+				boolean up = x >= -1*(radius-1) && y >= -1*(radius-1) && z >= -1*(radius-1);
+				boolean down = x <= radius-1 && y <= radius-1 && z <= radius-1;
+				if(!up && !down) continue;
+
+				int index = index(x, y);
+				setBit(cells, index);
+				cellCount++;
+
+				if(z >= radius) setBit(triangles[0], index);
+				else if(z <= -1*radius) setBit(triangles[1], index);
+				else if(y >= radius) setBit(triangles[2], index);
+				else if(y <= -1*radius) setBit(triangles[3], index);
+				else if(x >= radius) setBit(triangles[4], index);
+				else if(x <= -1*radius) setBit(triangles[5], index);
+			}
+		}
+		for(int t = 0; t < 6; t++) {
+			for(int i = nextSetBit(triangles[t], 0); i >= 0; i = nextSetBit(triangles[t], i + 1))
+				triangleOf[i] = (byte) t;
+		}
+		/** Number the cells densely, for compact encodings that do not need the padding */
+		cellIndices = new int[cellCount];
+		cellNumbers = new int[size];
+		Arrays.fill(cellNumbers, -1);
+		for(int i = nextSetBit(cells, 0), n = 0; i >= 0; i = nextSetBit(cells, i + 1), n++) {
+			cellIndices[n] = i;
+			cellNumbers[i] = n;
+		}
+		triangleSize = bitCount(triangles[0]);
+
+		/** Precompute neighbor and jump tables */
+		neighbors = new int[size*DIRECTIONS];
+		jumps = new int[size*DIRECTIONS];
+		for(int index = 0; index < size; index++) {
+			for(int d = 0; d < DIRECTIONS; d++) {
+				int nbr = index + offsets[d];
+				int jmp = nbr + offsets[d];
+				boolean onBoard = isCell(index);
+				neighbors[index*DIRECTIONS + d] = onBoard && isCell(nbr) ? nbr : -1;
+				jumps[index*DIRECTIONS + d] = onBoard && isCell(nbr) && isCell(jmp) ? jmp : -1;
+			}
+		}
+
+		/** Precompute distances to each triangle's corner */
+		cornerDistances = new int[6][size];
+		for(int t = 0; t < 6; t++) {
+			int corner = getCorner(t);
+			for(int i = nextSetBit(cells, 0); i >= 0; i = nextSetBit(cells, i + 1))
+				cornerDistances[t][i] = getDistance(i, corner);
+		}
+
+		/** Precompute distances to each triangle by a breadth-first search out from its cells */
+		goalDistances = new int[6][size];
+		int[] queue = new int[cellCount];
+		for(int t = 0; t < 6; t++) {
+			int[] dist = goalDistances[t];
+			Arrays.fill(dist, -1);
+			int head = 0, tail = 0;
+			for(int i = nextSetBit(triangles[t], 0); i >= 0; i = nextSetBit(triangles[t], i + 1)) {
+				dist[i] = 0;
+				queue[tail++] = i;
+			}
+			while(head < tail) {
+				int i = queue[head++];
+				for(int d = 0; d < DIRECTIONS; d++) {
+					int nbr = neighbors[i*DIRECTIONS + d];
+					if(nbr >= 0 && dist[nbr] < 0) {
+						dist[nbr] = dist[i] + 1;
+						queue[tail++] = nbr;
+					}
+				}
+			}
+			for(int i = 0; i < size; i++) {
+				if(dist[i] < 0) dist[i] = 0;
+			}
+		}
+		forwardJumps = new byte[6][size];
+		for(int t = 0; t < 6; t++) {
+			for(int i = nextSetBit(cells, 0); i >= 0; i = nextSetBit(cells, i + 1)) {
+				for(int d = 0; d < DIRECTIONS; d++) {
+					int land = jumps[i*DIRECTIONS + d];
+					if(land >= 0 && goalDistances[t][land] < goalDistances[t][i]) forwardJumps[t][i] |= 1 << d;
+				}
+			}
+		}
+
+		/** Draw Zobrist keys for every player that could be on the board */
+		zobrist = new long[6*size];
+		SplittableRandom random = new SplittableRandom(ZOBRIST_SEED + radius);
+		for(int i = 0; i < zobrist.length; i++) zobrist[i] = random.nextLong();
+	}
+
+	/**
+	 * Returns the index of an (x,y) coordinate. z is implied by x+y+z=0
+	 * @param x x coordinate
+	 * @param y y coordinate
+	 * @return index of the coordinate, or -1 if it is outside the layout
+	 */
+	public int index(int x, int y) {
+		if(x < -extent || x > extent || y < -extent || y > extent) return -1;
+		return (y + extent)*width + (x + extent);
+	}
+
+	/**
+	 * Returns x coordinate of an index
+	 * @param index index in layout
+	 * @return x coordinate
+	 */
+	public int getX(int index) {
+		return index % width - extent;
+	}
+
+	/**
+	 * Returns y coordinate of an index
+	 * @param index index in layout
+	 * @return y coordinate
+	 */
+	public int getY(int index) {
+		return index / width - extent;
+	}
+
+	/**
+	 * Returns z coordinate of an index
+	 * @param index index in layout
+	 * @return z coordinate
+	 */
+	public int getZ(int index) {
+		return -1*(getX(index) + getY(index));
+	}
+
+	/**
+	 * Determines if an index is a cell on the board
+	 * @param index index to check
+	 * @return true if the index is a cell, false otherwise
+	 */
+	public boolean isCell(int index) {
+		return index >= 0 && index < size && testBit(cells, index);
+	}
+
+	/**
+	 * Returns the index offset of stepping one space in a direction
+	 * @param direction direction, 0 to 5
+	 * @return index offset
+	 */
+	public int getOffset(int direction) {
+		return offsets[direction];
+	}
+
+	/**
+	 * Returns the adjacent cell in a direction
+	 * @param index cell index
+	 * @param direction direction, 0 to 5
+	 * @return adjacent cell index, or -1 if it is off the board
+	 */
+	public int getNeighbor(int index, int direction) {
+		return neighbors[index*DIRECTIONS + direction];
+	}
+
+	/**
+	 * Returns the cell landed on by jumping the adjacent cell in a direction
+	 * @param index cell index
+	 * @param direction direction, 0 to 5
+	 * @return landing cell index, or -1 if it is off the board
+	 */
+	public int getJump(int index, int direction) {
+		return jumps[index*DIRECTIONS + direction];
+	}
+
+	/**
+	 * Returns the neighbor table. Entry index*DIRECTIONS + direction is the adjacent
+	 * cell, or -1. The array is shared and must not be modified.
+	 * @return neighbor table
+	 */
+	public int[] getNeighbors() {
+		return neighbors;
+	}
+
+	/**
+	 * Returns the jump table. Entry index*DIRECTIONS + direction is the landing cell
+	 * of a jump over the adjacent cell, or -1. The array is shared and must not be modified.
+	 * @return jump table
+	 */
+	public int[] getJumps() {
+		return jumps;
+	}
+
+	/**
+	 * Returns the Zobrist key of a player's piece on a cell
+	 * @param playerIndex index of player
+	 * @param index cell index
+	 * @return 64-bit key
+	 */
+	public long getZobrist(int playerIndex, int index) {
+		return zobrist[playerIndex*size + index];
+	}
+
+	/**
+	 * Returns the mask of cells on the board. The array is shared and must not be modified.
+	 * @return mask of cells
+	 */
+	public long[] getCells() {
+		return cells;
+	}
+
+	/**
+	 * Returns the mask of a home triangle. Triangle i holds player i's winLocs.
+	 * The array is shared and must not be modified.
+	 * @param triangle triangle index, 0 to 5
+	 * @return mask of triangle
+	 */
+	public long[] getTriangle(int triangle) {
+		return triangles[triangle];
+	}
+
+	/**
+	 * Returns the corner cell of a home triangle, farthest from the center of the board
+	 * @param triangle triangle index, 0 to 5
+	 * @return cell index of the corner
+	 */
+	public int getCorner(int triangle) {
+		int far = extent;
+		int near = -1*(radius-1);
+		switch(triangle) {
+			case 0: return index(near, near);
+			case 1: return index(-near, -near);
+			case 2: return index(near, far);
+			case 3: return index(-near, -far);
+			case 4: return index(far, near);
+			case 5: return index(-far, -near);
+			default: throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * Returns the distance between two cells. Distance is the shortest number of
+	 * steps taken to get from one to the other without barriers.
+	 * @param a first cell index
+	 * @param b second cell index
+	 * @return distance between a and b
+	 */
+	public int getDistance(int a, int b) {
+		return (Math.abs(getX(a) - getX(b)) +
+				Math.abs(getY(a) - getY(b)) +
+				Math.abs(getZ(a) - getZ(b)))/2;
+	}
+
+	/**
+	 * Returns the distance of every cell from the corner of a home triangle. The
+	 * array is shared and must not be modified.
+	 * @param triangle triangle index, 0 to 5
+	 * @return distances by cell index
+	 */
+	public int[] getCornerDistances(int triangle) {
+		return cornerDistances[triangle];
+	}
+
+	/**
+	 * Returns the number of steps from every cell to the nearest cell of a home
+	 * triangle. The array is shared and must not be modified.
+	 * @param triangle triangle index, 0 to 5
+	 * @return distances by cell index, 0 inside the triangle
+	 */
+	public int[] getGoalDistances(int triangle) {
+		return goalDistances[triangle];
+	}
+
+	/**
+	 * Returns, for every cell, the directions of the jumps from it that land nearer a
+	 * home triangle, as one bit per direction. The array is shared and must not be modified.
+	 * @param triangle triangle index, 0 to 5
+	 * @return direction bits by cell index
+	 */
+	public byte[] getForwardJumps(int triangle) {
+		return forwardJumps[triangle];
+	}
+
+	/**
+	 * Returns the home triangle an index is in
+	 * @param index index in layout
+	 * @return triangle index, or -1 if the index is not in a home triangle
+	 */
+	public int getTriangleOf(int index) {
+		return triangleOf[index];
+	}
+
+	/**
+	 * Returns the number of cells in each home triangle
+	 * @return cells per triangle
+	 */
+	public int getTriangleSize() {
+		return triangleSize;
+	}
+
+	/**
+	 * Returns radius of the board
+	 * @return radius
+	 */
+	public int getRadius() {
+		return radius;
+	}
+
+	/**
+	 * Returns the number of indices in the layout
+	 * @return layout size
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of longs in a mask of this layout
+	 * @return words per mask
+	 */
+	public int getWords() {
+		return words;
+	}
+
+	/**
+	 * Returns the number of cells on the board
+	 * @return number of cells
+	 */
+	public int getCellCount() {
+		return cellCount;
+	}
+
+	/**
+	 * Returns the dense number of a cell. Cells are numbered 0 to getCellCount()-1 in index order.
+	 * @param index cell index
+	 * @return cell number, or -1 if the index is not a cell
+	 */
+	public int getCellNumber(int index) {
+		return cellNumbers[index];
+	}
+
+	/**
+	 * Returns the index of a cell from its dense number
+	 * @param number cell number, 0 to getCellCount()-1
+	 * @return cell index
+	 */
+	public int getCellIndex(int number) {
+		return cellIndices[number];
+	}
+
+	/**
+	 * Sets a bit in a mask
+	 * @param mask mask to modify
+	 * @param index bit to set
+	 */
+	public static void setBit(long[] mask, int index) {
+		mask[index >>> 6] |= 1L << index;
+	}
+
+	/**
+	 * Clears a bit in a mask
+	 * @param mask mask to modify
+	 * @param index bit to clear
+	 */
+	public static void clearBit(long[] mask, int index) {
+		mask[index >>> 6] &= ~(1L << index);
+	}
+
+	/**
+	 * Determines if a bit is set in a mask
+	 * @param mask mask to check
+	 * @param index bit to check
+	 * @return true if bit is set, false otherwise
+	 */
+	public static boolean testBit(long[] mask, int index) {
+		return (mask[index >>> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * Finds the next set bit in a mask
+	 * @param mask mask to search
+	 * @param from first index to check
+	 * @return index of the next set bit at or after from, or -1 if there is none
+	 */
+	public static int nextSetBit(long[] mask, int from) {
+		int w = from >>> 6;
+		if(w >= mask.length) return -1;
+		long word = mask[w] & (-1L << from);
+		while(word == 0) {
+			if(++w == mask.length) return -1;
+			word = mask[w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	/**
+	 * Counts the set bits in a mask
+	 * @param mask mask to count
+	 * @return number of set bits
+	 */
+	public static int bitCount(long[] mask) {
+		int count = 0;
+		for(long word : mask) count += Long.bitCount(word);
+		return count;
+	}
+
+	/**
+	 * Shifts every bit of a mask by a number of indices. in and out may be the same array.
+	 * @param in mask to shift
+	 * @param shift index offset. Positive shifts move bits to higher indices
+	 * @param out receives the shifted mask
+	 */
+	public static void shift(long[] in, int shift, long[] out) {
+		int n = in.length;
+		if(shift >= 0) {
+			int ws = shift >>> 6, bs = shift & 63;
+			for(int i = n-1; i >= 0; i--) {
+				int j = i - ws;
+				long word = j >= 0 ? in[j] << bs : 0;
+				if(bs != 0 && j >= 1) word |= in[j-1] >>> (64 - bs);
+				out[i] = word;
+			}
+		}
+		else {
+			shift = -shift;
+			int ws = shift >>> 6, bs = shift & 63;
+			for(int i = 0; i < n; i++) {
+				int j = i + ws;
+				long word = j < n ? in[j] >>> bs : 0;
+				if(bs != 0 && j+1 < n) word |= in[j+1] << (64 - bs);
+				out[i] = word;
+			}
+		}
+	}
+}
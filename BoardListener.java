@@ -0,0 +1,14 @@
+/**
+ * Receives notice of changes to a Board, so that a view can repaint only when,
+ * and where, something changed.
+ */
+public interface BoardListener {
+
+	/**
+	 * Called after a game move takes a piece from one cell to another. Moves made and
+	 * unmade by search are not reported. Runs on the thread that changed the board.
+	 * @param src cell index that the piece left
+	 * @param dst cell index that the piece moved to
+	 */
+	void pieceMoved(int src, int dst);
+}
@@ -0,0 +1,254 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+
+/**
+ * Draws the board for a Surface without building any Points or shapes per frame.
+ * The screen position of every cell is computed once, the empty board is rendered
+ * once into a cached image, and pieces are copied from sprites rendered once per
+ * color. Cells are found by their index in the BoardLayout, so a caller can draw
+ * or repaint just the cells that changed.
+ *
+ * The cell size is worked out from the board radius and the size of the area the
+ * board is drawn in, so any radius fits, and a renderer is rebuilt when that area
+ * is resized. Renderers are shared between all surfaces drawing boards of the same
+ * radius at the same size.
+ */
+public class BoardRenderer {
+
+	/** Renderers that have already been built, by board radius. Only the latest size of each radius is kept */
+	private static final HashMap<Integer, BoardRenderer> renderers = new HashMap<Integer, BoardRenderer>();
+
+	/** Layout of the board */
+	private BoardLayout layout;
+	/** Width and height of the area the board is drawn in */
+	private int width, height;
+	/** Distance between neighboring cell centers along a row */
+	private int hexDiameter;
+	/** Distance between rows */
+	private double rowHeight;
+	/** Diameter of a cell's circle */
+	private int pieceDiameter;
+	/** Indices of the board's cells */
+	private int[] cells;
+	/** Screen position of the top-left corner of each index's sprite */
+	private int[] cellX, cellY;
+	/** Width and height of a sprite, including its outline */
+	private int spriteSize;
+	/** Outlines of every cell of the empty board, on an opaque background */
+	private BufferedImage background;
+	/** Color behind the board in the background image */
+	private Color backgroundColor;
+	/** Outline of an empty cell */
+	private BufferedImage outline;
+	/** Filled, outlined sprites by fill color */
+	private HashMap<Color, BufferedImage> sprites;
+
+	/**
+	 * Returns the renderer for a layout drawn on the default screen size
+	 * @param layout board layout
+	 * @return renderer for the layout
+	 */
+	public static BoardRenderer forLayout(BoardLayout layout) {
+		return forLayout(layout, App.SCREEN_SIZE, App.SCREEN_SIZE);
+	}
+
+	/**
+	 * Returns the renderer for a layout drawn in an area of the given size, building
+	 * it if no renderer of that radius and size is cached
+	 * @param layout board layout
+	 * @param width width of the area in pixels
+	 * @param height height of the area in pixels
+	 * @return renderer for the layout
+	 */
+	public static synchronized BoardRenderer forLayout(BoardLayout layout, int width, int height) {
+		BoardRenderer renderer = renderers.get(layout.getRadius());
+		if(renderer == null || renderer.width != width || renderer.height != height) {
+			renderer = new BoardRenderer(layout, width, height);
+			renderers.put(layout.getRadius(), renderer);
+		}
+		return renderer;
+	}
+
+	/**
+	 * Constructor. Sizes the cells to fit the area, places every cell and renders the
+	 * outline of an empty cell
+	 * @param layout board layout
+	 * @param width width of the area in pixels
+	 * @param height height of the area in pixels
+	 */
+	private BoardRenderer(BoardLayout layout, int width, int height) {
+		/** Error Handling: The board must have somewhere to be drawn */
+		if(width <= 0 || height <= 0) throw new IllegalArgumentException("Bad size " + width + "x" + height);
+
+		this.layout = layout;
+		this.width = width;
+		this.height = height;
+		/** Same proportions as App's constants, which are these values for the default radius and screen size */
+		int radius = layout.getRadius();
+		hexDiameter = Math.max(2, (Math.min(width, height)*2/3)/(radius + 2*(radius-1)));
+		pieceDiameter = Math.max(2, hexDiameter*4/5);
+		double yOffset = ((double) hexDiameter/2)*(2-Math.sqrt(3));
+		double visualOffset = ((double) hexDiameter/2) * Math.sqrt(2)/9;
+		rowHeight = hexDiameter - (yOffset - visualOffset);
+		spriteSize = pieceDiameter + 1;
+
+		/** Same placement as Point.getEllipse, centered in the area and rounded so cells and sprites line up */
+		cells = new int[layout.getCellCount()];
+		cellX = new int[layout.getSize()];
+		cellY = new int[layout.getSize()];
+		long[] mask = layout.getCells();
+		int n = 0;
+		for(int i = BoardLayout.nextSetBit(mask, 0); i >= 0; i = BoardLayout.nextSetBit(mask, i + 1)) {
+			cells[n++] = i;
+			double px = -1*((double) layout.getX(i) - layout.getY(i))/2;
+			double py = layout.getZ(i);
+			cellX[i] = (int) Math.round(px*hexDiameter + width/2);
+			cellY[i] = (int) Math.round(py*rowHeight + height/2);
+		}
+
+		sprites = new HashMap<Color, BufferedImage>();
+		outline = createSprite(null);
+	}
+
+	/**
+	 * Helper method. Renders one cell: a filled circle with a black outline
+	 * @param fill fill color, or null for the outline alone
+	 * @return sprite
+	 */
+	private BufferedImage createSprite(Color fill) {
+		BufferedImage sprite = new BufferedImage(spriteSize, spriteSize, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = sprite.createGraphics();
+		Ellipse2D ellipse = new Ellipse2D.Double(0, 0, pieceDiameter, pieceDiameter);
+		if(fill != null) {
+			g.setColor(fill);
+			g.fill(ellipse);
+		}
+		g.setColor(Color.BLACK);
+		g.draw(ellipse);
+		g.dispose();
+		return sprite;
+	}
+
+	/**
+	 * Draws the empty board: the outline of every cell on a background color. The image
+	 * is opaque so that copying it to the screen needs no blending, and is rendered
+	 * again only if the background color changes.
+	 * @param g graphics object
+	 * @param color background color
+	 */
+	public synchronized void drawBackground(Graphics g, Color color) {
+		if(background == null || !color.equals(backgroundColor)) {
+			background = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			backgroundColor = color;
+			Graphics2D bg = background.createGraphics();
+			bg.setColor(color);
+			bg.fillRect(0, 0, width, height);
+			for(int i : cells) bg.drawImage(outline, cellX[i], cellY[i], null);
+			bg.dispose();
+		}
+		g.drawImage(background, 0, 0, null);
+	}
+
+	/**
+	 * Draws a filled cell, such as a piece or a possible move
+	 * @param g graphics object
+	 * @param index cell index
+	 * @param fill fill color
+	 */
+	public synchronized void drawCell(Graphics g, int index, Color fill) {
+		BufferedImage sprite = sprites.get(fill);
+		if(sprite == null) {
+			sprite = createSprite(fill);
+			sprites.put(fill, sprite);
+		}
+		g.drawImage(sprite, cellX[index], cellY[index], null);
+	}
+
+	/**
+	 * Returns the screen area covered by a cell
+	 * @param index cell index
+	 * @return bounds of the cell
+	 */
+	public Rectangle getBounds(int index) {
+		return new Rectangle(cellX[index], cellY[index], spriteSize, spriteSize);
+	}
+
+	/**
+	 * Finds the cell under a screen pixel in constant time. This inverts the placement
+	 * in the constructor: the pixel is turned back into fractional cube coordinates,
+	 * rounded to the nearest cell, and then checked against the circle drawn there.
+	 * @param x screen x coordinate
+	 * @param y screen y coordinate
+	 * @return index of the cell whose circle contains the pixel, or -1 if there is none
+	 */
+	public int getCellAt(int x, int y) {
+		double size = pieceDiameter;
+		/** Screen position, relative to the cell centers, in units of column and row */
+		double px = (x - size/2 - width/2) / hexDiameter;
+		double pz = (y - size/2 - height/2) / rowHeight;
+		/** px = -(x-y)/2 and x+y+z = 0, so x = -px - z/2 and y = px - z/2 */
+		double fx = -px - pz/2;
+		double fy = px - pz/2;
+
+		/** Round each coordinate, then fix the one that moved furthest so the three still sum to zero */
+		int rx = (int) Math.round(fx), ry = (int) Math.round(fy), rz = (int) Math.round(pz);
+		double dx = Math.abs(rx - fx), dy = Math.abs(ry - fy), dz = Math.abs(rz - pz);
+		if(dx > dy && dx > dz) rx = -ry - rz;
+		else if(dy > dz) ry = -rx - rz;
+
+		int index = layout.index(rx, ry);
+		if(!layout.isCell(index)) return -1;
+		/** Same test as Ellipse2D.contains, on the circle where the sprite is drawn */
+		double ex = (x - cellX[index]) / size - 0.5;
+		double ey = (y - cellY[index]) / size - 0.5;
+		return ex*ex + ey*ey < 0.25 ? index : -1;
+	}
+
+	/**
+	 * Determines if a cell overlaps an area of the screen
+	 * @param area screen area, such as a clip
+	 * @param index cell index
+	 * @return true if the cell overlaps the area, false otherwise
+	 */
+	public boolean intersects(Rectangle area, int index) {
+		return cellX[index] < area.x + area.width && cellX[index] + spriteSize > area.x
+				&& cellY[index] < area.y + area.height && cellY[index] + spriteSize > area.y;
+	}
+
+	/**
+	 * Returns the indices of the board's cells. The array is shared and must not be modified.
+	 * @return cell indices
+	 */
+	public int[] getCells() {
+		return cells;
+	}
+
+	/**
+	 * Returns the layout this renderer draws
+	 * @return board layout
+	 */
+	public BoardLayout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * Returns the width of the area this renderer draws in
+	 * @return width in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the height of the area this renderer draws in
+	 * @return height in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+}
@@ -0,0 +1,354 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * An append-only archive of GameRecords, read back through memory-mapped files so
+ * that scanning millions of games reads the pages in place instead of copying them
+ * through the heap.
+ *
+ * An archive is two files. The data file starts with an eight-byte header, the
+ * magic number "CCGA" and a version, followed by the encoded records back to back.
+ * The index file, with the same name plus ".idx", holds one big-endian long per
+ * game: the offset in the data file where the game's record ends. Record i runs
+ * from the end of record i-1, or the header, to the end of record i.
+ *
+ * Records are written before their index entry, so a crash while appending leaves
+ * at worst some bytes past the last indexed record. They are ignored when reading
+ * and cut off by the next Writer.
+ *
+ * Usage: java GameArchive FILE [GAME]
+ * prints a summary of every game in the archive, or replays one game on a Board
+ * and prints its moves.
+ */
+public class GameArchive implements Closeable {
+
+	/** Magic number at the start of the data file, "CCGA" */
+	public static final int MAGIC = 0x43434741;
+	/** Version of the format */
+	public static final int VERSION = 1;
+	/** Size of the data file header in bytes */
+	public static final int HEADER_SIZE = 8;
+	/** Largest part of the data file mapped as one buffer */
+	private static final long MAX_REGION = 1L << 30;
+
+	/** Index file, mapped */
+	private MappedByteBuffer index;
+	/** Number of games */
+	private int size;
+	/** Mapped regions of the data file, each holding whole records */
+	private ArrayList<MappedByteBuffer> regions;
+	/** First game of each region */
+	private int[] regionStart;
+	/** Offset in the data file of each region */
+	private long[] regionOffset;
+
+	/**
+	 * Opens an archive for reading
+	 * @param file data file. The index is the same path plus ".idx"
+	 * @throws IOException if the files cannot be read or are not an archive
+	 */
+	public GameArchive(File file) throws IOException {
+		try(RandomAccessFile data = new RandomAccessFile(file, "r");
+				RandomAccessFile idx = new RandomAccessFile(getIndexFile(file), "r")) {
+			checkHeader(data);
+			long indexLength = idx.length() / 8 * 8;
+			/** Error Handling: The index must fit in one mapping */
+			if(indexLength > Integer.MAX_VALUE) throw new IOException("Index too large " + indexLength);
+			index = idx.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, indexLength);
+			size = (int) (indexLength / 8);
+			/** Error Handling: Every indexed record must be in the data file */
+			if(size > 0 && getEnd(size - 1) > data.length()) throw new IOException("Index past end of data");
+
+			/** Map the data in regions of whole records, so no record spans two buffers */
+			regions = new ArrayList<MappedByteBuffer>();
+			ArrayList<Integer> starts = new ArrayList<Integer>();
+			int game = 0;
+			while(game < size) {
+				long offset = getStart(game);
+				int last = game;
+				while(last + 1 < size && getEnd(last + 1) - offset <= MAX_REGION) last++;
+				/** Error Handling: Records are far smaller than a region, so a region always holds one */
+				if(getEnd(last) - offset > MAX_REGION) throw new IOException("Record too large at game " + game);
+				regions.add(data.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, getEnd(last) - offset));
+				starts.add(game);
+				game = last + 1;
+			}
+			regionStart = new int[starts.size()];
+			regionOffset = new long[starts.size()];
+			for(int r = 0; r < regionStart.length; r++) {
+				regionStart[r] = starts.get(r);
+				regionOffset[r] = getStart(regionStart[r]);
+			}
+		}
+	}
+
+	/**
+	 * Summarizes an archive, or replays one of its games, from the command line
+	 * @param args data file, then optionally a game number
+	 */
+	public static void main(String[] args) throws IOException {
+		/** Error Handling: An archive must be given */
+		if(args.length < 1 || args.length > 2) throw new IllegalArgumentException("Usage: java GameArchive FILE [GAME]");
+		try(GameArchive archive = new GameArchive(new File(args[0]))) {
+			if(args.length == 2) {
+				archive.replay(Integer.parseInt(args[1]));
+				return;
+			}
+			/** Scan the headers in place, without decoding any moves */
+			long start = System.nanoTime();
+			long[] wins = new long[6];
+			long draws = 0, moves = 0;
+			for(int game = 0; game < archive.size(); game++) {
+				ByteBuffer buffer = archive.getBuffer(game);
+				int winner = GameRecord.getWinner(buffer, buffer.position());
+				if(winner < 0) draws++;
+				else wins[winner]++;
+				moves += GameRecord.getMoveCount(buffer, buffer.position());
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.printf("%d games, %d moves, %.1f moves per game, %d draws, scanned in %.3f s%n",
+					archive.size(), moves, archive.size() == 0 ? 0 : (double) moves / archive.size(), draws, seconds);
+			for(int p = 0; p < wins.length; p++) {
+				if(wins[p] > 0) System.out.printf("  %s won %d%n", App.PLAYER_NAMES[p], wins[p]);
+			}
+		}
+	}
+
+	/**
+	 * Helper method. Replays a game on a Board, printing each move, and checks that
+	 * the board agrees with the recorded winner
+	 * @param game game number
+	 */
+	private void replay(int game) {
+		GameRecord record = get(game);
+		Board board = record.toBoard();
+		BoardLayout layout = board.getLayout();
+		System.out.printf("game %d: radius %d, %d players, %d moves%n",
+				game, record.getRadius(), record.getPlayers(), record.getMoveCount());
+		for(int ply = 0; ply < record.getMoveCount(); ply++) {
+			int src = MoveGenerator.getSrc(record.getMove(ply)), dst = MoveGenerator.getDst(record.getMove(ply));
+			System.out.printf("%4d %d,%d,%d:%d,%d,%d%n", ply + 1,
+					layout.getX(src), layout.getY(src), layout.getZ(src), layout.getX(dst), layout.getY(dst), layout.getZ(dst));
+		}
+		int winner = board.won();
+		System.out.println(winner < 0 ? "no winner" : App.PLAYER_NAMES[winner] + " won");
+		/** Error Handling: The replayed board must end as recorded */
+		if(winner != record.getWinner()) throw new IllegalStateException("Recorded winner " + record.getWinner() + " != " + winner);
+	}
+
+	/**
+	 * Returns the index file of an archive
+	 * @param file data file
+	 * @return index file
+	 */
+	public static File getIndexFile(File file) {
+		return new File(file.getPath() + ".idx");
+	}
+
+	/**
+	 * Helper method. Checks the header of a data file
+	 * @param data data file
+	 * @throws IOException if the file is not an archive
+	 */
+	private static void checkHeader(RandomAccessFile data) throws IOException {
+		/** Error Handling: The file must start with the magic number and a known version */
+		if(data.length() < HEADER_SIZE) throw new IOException("Not a game archive");
+		data.seek(0);
+		if(data.readInt() != MAGIC) throw new IOException("Not a game archive");
+		int version = data.readInt();
+		if(version != VERSION) throw new IOException("Unknown archive version " + version);
+	}
+
+	/**
+	 * Returns the number of games in the archive
+	 * @return number of games
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a game's encoded record without copying it. The buffer is read-only,
+	 * shares the mapped file, and has the record between its position and limit.
+	 * @param game game number, 0 to size()-1
+	 * @return buffer holding the record
+	 */
+	public ByteBuffer getBuffer(int game) {
+		/** Error Handling: The game must be in the archive */
+		if(game < 0 || game >= size) throw new IllegalArgumentException("No game " + game);
+
+		int r = getRegion(game);
+		ByteBuffer buffer = regions.get(r).asReadOnlyBuffer();
+		buffer.limit((int) (getEnd(game) - regionOffset[r]));
+		buffer.position((int) (getStart(game) - regionOffset[r]));
+		return buffer;
+	}
+
+	/**
+	 * Decodes a game
+	 * @param game game number, 0 to size()-1
+	 * @return record of the game
+	 */
+	public GameRecord get(int game) {
+		return GameRecord.read(getBuffer(game));
+	}
+
+	/**
+	 * Returns the number of moves of a game without decoding it
+	 * @param game game number, 0 to size()-1
+	 * @return number of moves
+	 */
+	public int getMoveCount(int game) {
+		ByteBuffer buffer = getBuffer(game);
+		return GameRecord.getMoveCount(buffer, buffer.position());
+	}
+
+	/**
+	 * Returns the winner of a game without decoding it
+	 * @param game game number, 0 to size()-1
+	 * @return index of the winning player, or -1
+	 */
+	public int getWinner(int game) {
+		ByteBuffer buffer = getBuffer(game);
+		return GameRecord.getWinner(buffer, buffer.position());
+	}
+
+	/**
+	 * Helper method. Finds the region holding a game by binary search
+	 * @param game game number
+	 * @return region number
+	 */
+	private int getRegion(int game) {
+		int low = 0, high = regionStart.length - 1;
+		while(low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if(regionStart[mid] <= game) low = mid;
+			else high = mid - 1;
+		}
+		return low;
+	}
+
+	/**
+	 * Helper method. Returns the offset in the data file where a game's record starts
+	 * @param game game number
+	 * @return start offset
+	 */
+	private long getStart(int game) {
+		return game == 0 ? HEADER_SIZE : getEnd(game - 1);
+	}
+
+	/**
+	 * Helper method. Returns the offset in the data file where a game's record ends
+	 * @param game game number
+	 * @return end offset
+	 */
+	private long getEnd(int game) {
+		return index.getLong(game*8);
+	}
+
+	/**
+	 * Releases the archive. The mappings are freed when they are garbage collected.
+	 */
+	@Override
+	public void close() {
+		index = null;
+		regions = null;
+		size = 0;
+	}
+
+	/**
+	 * Appends games to an archive, creating it if it does not exist. Safe to share
+	 * between threads.
+	 */
+	public static class Writer implements Closeable {
+
+		/** Data file */
+		private FileChannel data;
+		/** Index file */
+		private FileChannel index;
+		/** Offset where the next record is written */
+		private long end;
+		/** Number of games in the archive */
+		private int size;
+
+		/**
+		 * Opens an archive for appending
+		 * @param file data file. The index is the same path plus ".idx"
+		 * @throws IOException if the files cannot be written or are not an archive
+		 */
+		public Writer(File file) throws IOException {
+			RandomAccessFile dataFile = new RandomAccessFile(file, "rw");
+			RandomAccessFile indexFile = new RandomAccessFile(getIndexFile(file), "rw");
+			data = dataFile.getChannel();
+			index = indexFile.getChannel();
+			try {
+				if(dataFile.length() == 0) {
+					dataFile.writeInt(MAGIC);
+					dataFile.writeInt(VERSION);
+					indexFile.setLength(0);
+				}
+				checkHeader(dataFile);
+
+				/** Cut off anything past the last whole index entry and the last indexed record */
+				size = (int) (indexFile.length() / 8);
+				indexFile.setLength(size*8L);
+				end = HEADER_SIZE;
+				if(size > 0) {
+					indexFile.seek((size - 1)*8L);
+					end = indexFile.readLong();
+				}
+				/** Error Handling: Every indexed record must be in the data file */
+				if(end > dataFile.length()) throw new IOException("Index past end of data");
+				dataFile.setLength(end);
+			} catch(IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		/**
+		 * Appends a game
+		 * @param record record of the game
+		 * @throws IOException if the game cannot be written
+		 */
+		public synchronized void add(GameRecord record) throws IOException {
+			ByteBuffer bytes = ByteBuffer.wrap(record.toBytes());
+			while(bytes.hasRemaining()) data.write(bytes, end + bytes.position());
+			end += bytes.capacity();
+
+			ByteBuffer entry = ByteBuffer.allocate(8);
+			entry.putLong(0, end);
+			while(entry.hasRemaining()) index.write(entry, size*8L + entry.position());
+			size++;
+		}
+
+		/**
+		 * Returns the number of games in the archive
+		 * @return number of games
+		 */
+		public synchronized int size() {
+			return size;
+		}
+
+		/**
+		 * Forces the archive to disk and closes it
+		 * @throws IOException if the files cannot be written
+		 */
+		@Override
+		public synchronized void close() throws IOException {
+			try {
+				if(data.isOpen()) data.force(false);
+				if(index.isOpen()) index.force(false);
+			} finally {
+				data.close();
+				index.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,256 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The moves of one game, with a compact binary encoding for storing many games.
+ *
+ * A record is a five-byte header, then the moves packed into a bit stream:
+ *
+ *   byte   radius
+ *   byte   number of players
+ *   byte   winning player, or -1 if the game had no winner
+ *   short  number of moves, unsigned
+ *   bits   source and destination of each move, as dense cell numbers
+ *
+ * Each cell number takes just enough bits for the board's cells, 7 for radius 5,
+ * so a move takes under two bytes. Bits are packed high bit first and the stream
+ * is padded with zeros to a whole byte. Multi-byte values are big-endian.
+ *
+ * Only moves are recorded. A turn a player passes for want of a move leaves no
+ * entry, so the mover of each move is the owner of the piece it moves.
+ */
+public class GameRecord {
+
+	/** Size of the header in bytes */
+	public static final int HEADER_SIZE = 5;
+	/** Largest number of moves a record can hold */
+	public static final int MAX_MOVES = 0xFFFF;
+
+	/** Board radius */
+	private int radius;
+	/** Number of players */
+	private int players;
+	/** Index of the winning player, or -1 */
+	private int winner;
+	/** Encoded moves, (src<<16)|dst by cell index, in the order they were made */
+	private int[] moves;
+
+	/**
+	 * Constructor
+	 * @param radius board radius
+	 * @param players number of players
+	 * @param winner index of the winning player, or -1
+	 * @param moves encoded moves in the order they were made
+	 */
+	public GameRecord(int radius, int players, int winner, int[] moves) {
+		/** Error Handling: The board must exist, with 2, 4 or 6 players, and the moves must fit */
+		if(radius < 2 || radius > Byte.MAX_VALUE) throw new IllegalArgumentException("Bad radius " + radius);
+		if(players != 2 && players != 4 && players != 6) throw new IllegalArgumentException("Bad number of players " + players);
+		if(winner < -1 || winner >= players) throw new IllegalArgumentException("Bad winner " + winner);
+		if(moves.length > MAX_MOVES) throw new IllegalArgumentException("Too many moves " + moves.length);
+
+		this.radius = radius;
+		this.players = players;
+		this.winner = winner;
+		this.moves = moves.clone();
+	}
+
+	/**
+	 * Records the moves made on a position since the start
+	 * @param position position at the end of the game
+	 * @return record of the game
+	 */
+	public static GameRecord of(BitBoard position) {
+		int[] moves = new int[position.getPly()];
+		for(int ply = 0; ply < moves.length; ply++) moves[ply] = position.getMove(ply);
+		return new GameRecord(position.getLayout().getRadius(), position.getNumPlayers(), position.getWinner(), moves);
+	}
+
+	/**
+	 * Returns the number of bits that each cell number takes on a board
+	 * @param layout board layout
+	 * @return bits per cell
+	 */
+	public static int getBitsPerCell(BoardLayout layout) {
+		return 32 - Integer.numberOfLeadingZeros(layout.getCellCount() - 1);
+	}
+
+	/**
+	 * Returns the number of bytes this record takes when encoded
+	 * @return encoded size
+	 */
+	public int getEncodedSize() {
+		int bits = 2*getBitsPerCell(BoardLayout.forRadius(radius));
+		return HEADER_SIZE + (int) (((long) moves.length*bits + 7) / 8);
+	}
+
+	/**
+	 * Encodes this record at the buffer's position, and advances the position past it
+	 * @param out buffer with at least getEncodedSize() bytes remaining
+	 */
+	public void write(ByteBuffer out) {
+		BoardLayout layout = BoardLayout.forRadius(radius);
+		int bits = getBitsPerCell(layout);
+		out.put((byte) radius);
+		out.put((byte) players);
+		out.put((byte) winner);
+		out.putShort((short) moves.length);
+
+		long pending = 0;
+		int count = 0;
+		for(int move : moves) {
+			int src = layout.getCellNumber(MoveGenerator.getSrc(move));
+			int dst = layout.getCellNumber(MoveGenerator.getDst(move));
+			/** Error Handling: Both ends of a move must be cells */
+			if(src < 0 || dst < 0) throw new IllegalArgumentException("Move off the board " + Integer.toHexString(move));
+			pending = (pending << 2*bits) | ((long) src << bits) | dst;
+			count += 2*bits;
+			while(count >= 8) {
+				count -= 8;
+				out.put((byte) (pending >>> count));
+			}
+		}
+		if(count > 0) out.put((byte) (pending << (8 - count)));
+	}
+
+	/**
+	 * Encodes this record
+	 * @return encoded bytes
+	 */
+	public byte[] toBytes() {
+		ByteBuffer out = ByteBuffer.allocate(getEncodedSize());
+		write(out);
+		return out.array();
+	}
+
+	/**
+	 * Decodes a record at the buffer's position, and advances the position past it
+	 * @param in buffer holding an encoded record
+	 * @return decoded record
+	 */
+	public static GameRecord read(ByteBuffer in) {
+		int radius = in.get();
+		int players = in.get();
+		int winner = in.get();
+		int count = in.getShort() & 0xFFFF;
+		/** Error Handling: The header must describe a real board */
+		if(radius < 2 || (players != 2 && players != 4 && players != 6)) throw new IllegalArgumentException("Bad record header");
+
+		BoardLayout layout = BoardLayout.forRadius(radius);
+		int bits = getBitsPerCell(layout);
+		int mask = (1 << bits) - 1;
+		int[] moves = new int[count];
+		long pending = 0;
+		int available = 0;
+		for(int i = 0; i < count; i++) {
+			while(available < 2*bits) {
+				pending = (pending << 8) | (in.get() & 0xFF);
+				available += 8;
+			}
+			available -= 2*bits;
+			int src = (int) (pending >>> (available + bits)) & mask;
+			int dst = (int) (pending >>> available) & mask;
+			/** Error Handling: Cell numbers must be on the board */
+			if(src >= layout.getCellCount() || dst >= layout.getCellCount()) throw new IllegalArgumentException("Bad move in record");
+			moves[i] = MoveGenerator.encode(layout.getCellIndex(src), layout.getCellIndex(dst));
+		}
+		return new GameRecord(radius, players, winner, moves);
+	}
+
+	/**
+	 * Decodes a record
+	 * @param bytes encoded record
+	 * @return decoded record
+	 */
+	public static GameRecord fromBytes(byte[] bytes) {
+		return read(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Returns the number of moves of an encoded record without decoding it
+	 * @param in buffer holding encoded records
+	 * @param offset offset of the record in the buffer
+	 * @return number of moves
+	 */
+	public static int getMoveCount(ByteBuffer in, int offset) {
+		return in.getShort(offset + 3) & 0xFFFF;
+	}
+
+	/**
+	 * Returns the winner of an encoded record without decoding it
+	 * @param in buffer holding encoded records
+	 * @param offset offset of the record in the buffer
+	 * @return index of the winning player, or -1
+	 */
+	public static int getWinner(ByteBuffer in, int offset) {
+		return in.get(offset + 2);
+	}
+
+	/**
+	 * Replays the whole game on a new board
+	 * @return board at the end of the game
+	 */
+	public Board toBoard() {
+		return toBoard(moves.length);
+	}
+
+	/**
+	 * Replays the start of the game on a new board, checking every move
+	 * @param ply number of moves to replay
+	 * @return board after the moves
+	 */
+	public Board toBoard(int ply) {
+		/** Error Handling: Can only replay the moves in the record */
+		if(ply < 0 || ply > moves.length) throw new IllegalArgumentException("Bad ply " + ply);
+
+		Board board = new Board(radius, Arrays.copyOf(App.PLAYERS, players));
+		for(int i = 0; i < ply; i++) {
+			HexNode<Piece> src = board.getNode(MoveGenerator.getSrc(moves[i]));
+			HexNode<Piece> dst = board.getNode(MoveGenerator.getDst(moves[i]));
+			/** Error Handling: Every move must be legal */
+			if(!board.move(src, dst)) throw new IllegalArgumentException("Illegal move at ply " + i);
+		}
+		return board;
+	}
+
+	/**
+	 * Returns the board radius
+	 * @return radius
+	 */
+	public int getRadius() {
+		return radius;
+	}
+
+	/**
+	 * Returns the number of players
+	 * @return number of players
+	 */
+	public int getPlayers() {
+		return players;
+	}
+
+	/**
+	 * Returns the winner
+	 * @return index of the winning player, or -1 if the game had no winner
+	 */
+	public int getWinner() {
+		return winner;
+	}
+
+	/**
+	 * Returns the number of moves
+	 * @return number of moves
+	 */
+	public int getMoveCount() {
+		return moves.length;
+	}
+
+	/**
+	 * Returns a move
+	 * @param ply number of moves made before it
+	 * @return encoded move
+	 */
+	public int getMove(int ply) {
+		return moves[ply];
+	}
+}
@@ -11,12 +11,27 @@ public class HexLattice<K> {
 	
 	/** List of all nodes in the lattice */
 	private ArrayList<HexNode<K>> nodes;
+	/** Coordinate index. Open-addressed hash of packed (x,y) keys */
+	private long[] indexKeys;
+	/** Position of each indexed node in the nodes list, plus one. 0 marks an empty slot */
+	private int[] indexSlots;
+	
+	/** Initial capacity of the coordinate index. Must be a power of two */
+	private static final int INITIAL_INDEX_CAPACITY = 64;
+	/** Neighbor directions as (increasing, decreasing) dimension pairs */
+	private static final Dimension[][] DIRECTIONS = {
+		{Dimension.X, Dimension.Y}, {Dimension.X, Dimension.Z},
+		{Dimension.Y, Dimension.X}, {Dimension.Y, Dimension.Z},
+		{Dimension.Z, Dimension.X}, {Dimension.Z, Dimension.Y}
+	};
 	
 	/**
 	 * Default constructor. Creates an empty lattice
 	 */
 	public HexLattice() {
 		nodes = new ArrayList<HexNode<K>>();
+		indexKeys = new long[INITIAL_INDEX_CAPACITY];
+		indexSlots = new int[INITIAL_INDEX_CAPACITY];
 	}
 	
 	/**
@@ -24,8 +39,8 @@ public class HexLattice<K> {
 	 * @param n first node in the lattice
 	 */
 	public HexLattice(HexNode<K> n) {
-		nodes = new ArrayList<HexNode<K>>();
-		nodes.add(n);
+		this();
+		insert(n);
 	}
 	
 	/**
@@ -37,40 +52,34 @@ public class HexLattice<K> {
 		if(containsNode(n.getX(), n.getY(), n.getZ())) 
 			throw new IllegalArgumentException();
 		
-		/** Adds node to list */
+		/** Adds node to list and index */
 		nodes.add(n);
+		indexPut(n.getX(), n.getY(), nodes.size());
 		
-		/** Adjusts Neighbor Fields */
-		for(HexNode<K> node : nodes) {
-			if(getDistance(n, node) == 1) {
-				if(node.getX() > n.getX() && node.getY() < n.getY()) {
-					n.addNeighbor(node, Dimension.X, Dimension.Y);
-					node.addNeighbor(n, Dimension.Y, Dimension.X);
-				}
-				else if(node.getX() > n.getX() && node.getZ() < n.getZ()) {
-					n.addNeighbor(node, Dimension.X, Dimension.Z);
-					node.addNeighbor(n, Dimension.Z, Dimension.X);
-				}
-				else if(node.getY() > n.getY() && node.getX() < n.getX()) {
-					n.addNeighbor(node, Dimension.Y, Dimension.X);
-					node.addNeighbor(n, Dimension.X, Dimension.Y);
-				}
-				else if(node.getY() > n.getY() && node.getZ() < n.getZ()) {
-					n.addNeighbor(node, Dimension.Y, Dimension.Z);
-					node.addNeighbor(n, Dimension.Z, Dimension.Y);
-				}
-				else if(node.getZ() > n.getZ() && node.getX() < n.getX()) {
-					n.addNeighbor(node, Dimension.Z, Dimension.X);
-					node.addNeighbor(n, Dimension.X, Dimension.Z);
-				}
-				else if(node.getZ() > n.getZ() && node.getY() < n.getY()) {
-					n.addNeighbor(node, Dimension.Z, Dimension.Y);
-					node.addNeighbor(n, Dimension.Y, Dimension.Z);
-				}
+		/** Adjusts Neighbor Fields. Looks up each of the six adjacent coordinates */
+		for(Dimension[] dir : DIRECTIONS) {
+			HexNode<K> node = get(n.getX() + offset(dir, Dimension.X),
+					n.getY() + offset(dir, Dimension.Y),
+					n.getZ() + offset(dir, Dimension.Z));
+			if(node != null) {
+				n.addNeighbor(node, dir[0], dir[1]);
+				node.addNeighbor(n, dir[1], dir[0]);
 			}
 		}
 	}
 	
+	/**
+	 * Helper method. Returns the change in a given dimension when stepping in a direction
+	 * @param dir (increasing, decreasing) dimension pair
+	 * @param dim dimension to measure
+	 * @return 1 if dim increases, -1 if dim decreases, 0 otherwise
+	 */
+	private static int offset(Dimension[] dir, Dimension dim) {
+		if(dir[0] == dim) return 1;
+		if(dir[1] == dim) return -1;
+		return 0;
+	}
+	
 	/**
 	 * Insert an empty node into the lattice given a neighbor and a location to place
 	 * it in relative to that neighbor.
@@ -118,10 +127,7 @@ public class HexLattice<K> {
 	 * @return true if node is in lattice, false otherwise
 	 */
 	public boolean containsNode(HexNode<K> n) {
-		for(HexNode<K> node : nodes) {
-			if(n.equals(node)) return true;
-		}
-		return false;
+		return get(n.getX(), n.getY(), n.getZ()) != null;
 	}
 	
 	/**
@@ -132,10 +138,7 @@ public class HexLattice<K> {
 	 * @return true if node is in lattice, false otherwise
 	 */
 	public boolean containsNode(int x, int y, int z) {
-		for(HexNode<K> node : nodes) {
-			if(x == node.getX() && y == node.getY() && z == node.getZ()) return true;
-		}
-		return false;
+		return get(x, y, z) != null;
 	}
 	
 	/**
@@ -160,12 +163,70 @@ public class HexLattice<K> {
 	 * @return node with given (x,y,z) coordinate
 	 */
 	public HexNode<K> get(int x, int y, int z) {
-		for(HexNode<K> n : nodes) {
-			if(n.getX() == x && n.getY() == y && n.getZ() == z) return n;
+		/** Coordinates off the x+y+z=0 plane can't be in the lattice */
+		if(x+y+z != 0) return null;
+		
+		long key = packKey(x, y);
+		int mask = indexKeys.length - 1;
+		for(int i = hash(key) & mask; indexSlots[i] != 0; i = (i + 1) & mask) {
+			if(indexKeys[i] == key) return nodes.get(indexSlots[i] - 1);
 		}
 		return null;
 	}
 	
+	/**
+	 * Helper method. Records a node's position in the nodes list under its coordinate.
+	 * Grows the index when it becomes half full.
+	 * @param x x coordinate
+	 * @param y y coordinate
+	 * @param slot position of the node in the nodes list, plus one
+	 */
+	private void indexPut(int x, int y, int slot) {
+		if(nodes.size() * 2 > indexKeys.length) {
+			long[] oldKeys = indexKeys;
+			int[] oldSlots = indexSlots;
+			indexKeys = new long[oldKeys.length * 2];
+			indexSlots = new int[oldSlots.length * 2];
+			for(int i = 0; i < oldKeys.length; i++) {
+				if(oldSlots[i] != 0) indexPutRaw(oldKeys[i], oldSlots[i]);
+			}
+		}
+		indexPutRaw(packKey(x, y), slot);
+	}
+	
+	/**
+	 * Helper method. Stores a key in the first free slot of its probe sequence
+	 * @param key packed coordinate key
+	 * @param slot position of the node in the nodes list, plus one
+	 */
+	private void indexPutRaw(long key, int slot) {
+		int mask = indexKeys.length - 1;
+		int i = hash(key) & mask;
+		while(indexSlots[i] != 0) i = (i + 1) & mask;
+		indexKeys[i] = key;
+		indexSlots[i] = slot;
+	}
+	
+	/**
+	 * Packs an (x,y) coordinate into a single key. z is implied by x+y+z=0
+	 * @param x x coordinate
+	 * @param y y coordinate
+	 * @return packed key
+	 */
+	private static long packKey(int x, int y) {
+		return ((long) x << 32) | (y & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * Spreads the bits of a packed key so that nearby coordinates land in distant slots
+	 * @param key packed key
+	 * @return hash of the key
+	 */
+	private static int hash(long key) {
+		key *= 0x9E3779B97F4A7C15L;
+		return (int) (key ^ (key >>> 32));
+	}
+	
 	/**
 	 * Sets all nodes to the unvisited state
 	 */
@@ -5,8 +5,8 @@ public class HexNode<K> {
 	private K key;
 	/** (x,y,z) coordinates. x+y+z=0 at all times */
 	private int x, y, z;
-	/** Neighboring HexNodes. Char1 -> increase Dimension, Char2 -> decrease */
-	private HexNode<K> xy, xz, yx, yz, zx, zy;
+	/** Neighboring HexNodes, in xy, xz, yx, yz, zx, zy order. Char1 -> increase Dimension, Char2 -> decrease */
+	private HexNode<K>[] neighbors;
 	/** For iteration. Notes whether the node has been visited */
 	private boolean visited;
 	
@@ -17,6 +17,7 @@ public class HexNode<K> {
 	 * @param y y coordinate
 	 * @param z z coordinate
 	 */
+	@SuppressWarnings("unchecked")
 	public HexNode(K key, int x, int y, int z) {
 		/** Error Handling: x, y, and z must add up to 0 */
 		if(x+y+z != 0) throw new IllegalArgumentException();
@@ -27,6 +28,7 @@ public class HexNode<K> {
 		this.y = y;
 		this.z = z;
 		visited = false;
+		neighbors = (HexNode<K>[]) new HexNode<?>[6];
 	}
 	
 	/**
@@ -95,12 +97,7 @@ public class HexNode<K> {
 		/** Error Handling: Must have two separate dimensions to locate the nodes*/
 		if(inc == dec) throw new IllegalArgumentException();
 		
-		else if(inc == Dimension.X && dec == Dimension.Y) xy = n;
-		else if(inc == Dimension.X && dec == Dimension.Z) xz = n;
-		else if(inc == Dimension.Y && dec == Dimension.X) yx = n;
-		else if(inc == Dimension.Y && dec == Dimension.Z) yz = n;
-		else if(inc == Dimension.Z && dec == Dimension.X) zx = n;
-		else if(inc == Dimension.Z && dec == Dimension.Y) zy = n;
+		neighbors[slot(inc, dec)] = n;
 	}
 	
 	/**
@@ -110,15 +107,22 @@ public class HexNode<K> {
 	 * @return neighboring node
 	 */
 	public HexNode<K> getNeighbor(Dimension inc, Dimension dec) {
-		if(inc == Dimension.X && dec == Dimension.Y) return xy;
-		else if(inc == Dimension.X && dec == Dimension.Z) return xz;
-		else if(inc == Dimension.Y && dec == Dimension.X) return yx;
-		else if(inc == Dimension.Y && dec == Dimension.Z) return yz;
-		else if(inc == Dimension.Z && dec == Dimension.X) return zx;
-		else if(inc == Dimension.Z && dec == Dimension.Y) return zy;
-			 
 		/** Error Handling: Must have two separate dimensions to locate the nodes */
-		else throw new IllegalArgumentException();
+		if(inc == dec) throw new IllegalArgumentException();
+		
+		return neighbors[slot(inc, dec)];
+	}
+	
+	/**
+	 * Helper method. Returns the neighbors array slot of a direction
+	 * @param inc increasing dimension
+	 * @param dec decreasing dimension
+	 * @return slot, 0 to 5
+	 */
+	private static int slot(Dimension inc, Dimension dec) {
+		int i = inc.ordinal();
+		int d = dec.ordinal();
+		return 2*i + (d < i ? d : d-1);
 	}
 	
 	/**
@@ -127,12 +131,9 @@ public class HexNode<K> {
 	 */
 	public ArrayList<HexNode<K>> getNeighbors() {
 		ArrayList<HexNode<K>> result = new ArrayList<HexNode<K>>();
-		if(xy != null) result.add(xy);
-		if(xz != null) result.add(xz);
-		if(yx != null) result.add(yx);
-		if(yz != null) result.add(yz);
-		if(zx != null) result.add(zx);
-		if(zy != null) result.add(zy);
+		for(HexNode<K> n : neighbors) {
+			if(n != null) result.add(n);
+		}
 		return result;
 	}
 	
@@ -152,14 +153,25 @@ public class HexNode<K> {
 	
 	/**
 	 * Determines if two HexNodes have the same coordinates
-	 * @param n other HexNode
+	 * @param o other HexNode
 	 * @return true if the two are equal, false otherwise
 	 */
-	public boolean equals(HexNode<K> n) {
-		if(n == null) return false;
+	@Override
+	public boolean equals(Object o) {
+		if(!(o instanceof HexNode)) return false;
+		HexNode<?> n = (HexNode<?>) o;
 		return (x == n.getX() && y == n.getY() && z == n.getZ());
 	}
 	
+	/**
+	 * Hashes the node by its coordinates. z is implied by x+y+z=0
+	 * @return hash code consistent with equals
+	 */
+	@Override
+	public int hashCode() {
+		return 31*x + y;
+	}
+	
 	/**
 	 * Returns a 2-D (x,y) point to represent this node
 	 * @return Point object with the HexNode and its 2-D (x,y) coordinate
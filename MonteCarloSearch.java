@@ -0,0 +1,453 @@
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Monte Carlo Tree Search for computer players, suited to four and six player games
+ * where minimax has to assume every opponent plays against the root player.
+ *
+ * Each worker thread grows its own UCT tree on its own copy of the position and runs
+ * playouts from its leaves. When time is up the visit counts of the root moves are
+ * summed over every worker's tree and the most visited move is played. Trees are
+ * kept between turns: the next search descends each tree along the moves played
+ * since, and reuses that subtree.
+ *
+ * Playouts follow a greedy policy over the move generator: usually the move gaining
+ * the most ground toward the mover's goal corner, ties broken at random, sometimes a
+ * random move. They stop after a few rounds and score the players by how far each
+ * is from home.
+ */
+public class MonteCarloSearch implements MoveSearch {
+
+	/** UCT exploration constant */
+	private static final double EXPLORATION = 0.7;
+	/** Chance that a playout move is random instead of greedy */
+	private static final double RANDOM_MOVE_CHANCE = 0.1;
+	/** Rounds of moves in a playout before it is scored */
+	private static final int PLAYOUT_ROUNDS = 4;
+	/** Difference in total distance from home that makes a playout near certain */
+	private static final double REWARD_SCALE = 8;
+
+	/** Layout of the board */
+	private BoardLayout layout;
+	/** Number of players */
+	private int numPlayers;
+	/** Distance of each cell from each player's goal corner */
+	private int[][] distance;
+	/** Threads that run the workers */
+	private ExecutorService pool;
+	/** Workers, each with its own tree */
+	private Worker[] workers;
+	/** Set when the search is interrupted, so the workers stop before the clock runs out */
+	private volatile boolean aborted;
+	/** Playouts run by the last search */
+	private long playouts;
+	/** Length of the last search in nanoseconds */
+	private long elapsed;
+
+	/**
+	 * Constructor. Creates a search with one worker per available processor
+	 * @param layout board layout
+	 * @param numPlayers number of players
+	 */
+	public MonteCarloSearch(BoardLayout layout, int numPlayers) {
+		this(layout, numPlayers, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructor. Creates a search with a given number of workers
+	 * @param layout board layout
+	 * @param numPlayers number of players
+	 * @param parallelism number of worker threads
+	 */
+	public MonteCarloSearch(BoardLayout layout, int numPlayers, int parallelism) {
+		this.layout = layout;
+		this.numPlayers = numPlayers;
+		distance = new int[numPlayers][];
+		for(int p = 0; p < numPlayers; p++) distance[p] = layout.getCornerDistances(p);
+
+		pool = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "MonteCarloSearch");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		workers = new Worker[parallelism];
+		for(int i = 0; i < parallelism; i++) workers[i] = new Worker(i);
+	}
+
+	@Override
+	public int findBestMove(BitBoard start, int playerIndex, long budgetMillis) {
+		long begin = System.nanoTime();
+		long stop = begin + budgetMillis*1000000L;
+
+		aborted = false;
+		ArrayList<Future<Long>> results = new ArrayList<Future<Long>>();
+		for(Worker w : workers) {
+			w.prepare(start, playerIndex, stop);
+			results.add(pool.submit(w));
+		}
+		playouts = 0;
+		try {
+			for(Future<Long> f : results) playouts += f.get();
+		} catch(InterruptedException e) {
+			/** The trees are only read once every worker has stopped growing them */
+			stopWorkers(results);
+			Thread.currentThread().interrupt();
+			return -1;
+		} catch(ExecutionException e) {
+			stopWorkers(results);
+			throw new IllegalStateException(e.getCause());
+		}
+		elapsed = System.nanoTime() - begin;
+
+		/** Every worker's root has the same move list, so visits can be summed by index */
+		Node root = workers[0].root;
+		if(root.moves == null) root.expand(workers[0]);
+		if(root.moves.length == 0) return -1;
+		int best = 0;
+		long bestVisits = -1;
+		for(int i = 0; i < root.moves.length; i++) {
+			long visits = 0;
+			for(Worker w : workers) {
+				if(w.root.children != null && w.root.children[i] != null) visits += w.root.children[i].visits;
+			}
+			if(visits > bestVisits) {
+				bestVisits = visits;
+				best = i;
+			}
+		}
+		return root.moves[best];
+	}
+
+	/**
+	 * Helper method. Stops the workers early and waits for every one of them to finish,
+	 * so that no tree is read or prepared while a worker is still growing it
+	 * @param results futures of the workers' searches
+	 */
+	private void stopWorkers(ArrayList<Future<Long>> results) {
+		aborted = true;
+		boolean interrupted = false;
+		for(Future<Long> f : results) {
+			boolean done = false;
+			while(!done) {
+				try {
+					f.get();
+					done = true;
+				} catch(InterruptedException e) {
+					/** Keep waiting, the workers stop within one iteration */
+					interrupted = true;
+				} catch(ExecutionException e) {
+					done = true;
+				}
+			}
+		}
+		if(interrupted) Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * A node of a worker's tree
+	 */
+	private static class Node {
+		/** Player to move in this node */
+		int player;
+		/** Moves of the player to move, ordered best first. Null until expanded */
+		int[] moves;
+		/** Children by move index. A child is null until its move is tried */
+		Node[] children;
+		/** Number of children created so far */
+		int tried;
+		/** Number of playouts through this node */
+		long visits;
+		/** Total reward of those playouts for the player who moved into this node */
+		double reward;
+
+		Node(int player) {
+			this.player = player;
+		}
+
+		/**
+		 * Generates and orders this node's moves
+		 * @param w worker whose position is at this node
+		 */
+		void expand(Worker w) {
+			int count = w.generate(player);
+			w.order(count, player);
+			moves = new int[count];
+			System.arraycopy(w.buffer, 0, moves, 0, count);
+			children = new Node[count];
+		}
+	}
+
+	/**
+	 * Grows one tree until the clock runs out
+	 */
+	private class Worker implements Callable<Long> {
+		/** Root of this worker's tree */
+		Node root;
+		/** Position the root represents */
+		BitBoard position;
+		/** Number of moves on the position's undo stack at the root */
+		int rootPly;
+		/** Key of the root position */
+		long rootKey;
+		/** Time to stop */
+		long stop;
+
+		/** Move generator */
+		MoveGenerator generator;
+		/** Holder of the move buffer, which the generator grows as needed */
+		int[][] buffers;
+		/** Move buffer */
+		int[] buffer;
+		/** Nodes on the path from the root to the current leaf */
+		Node[] path;
+		/** Reward of each player in the last playout */
+		double[] rewards;
+		/** Random numbers for playouts */
+		SplittableRandom random;
+
+		Worker(int seed) {
+			generator = new MoveGenerator(layout);
+			buffers = new int[1][];
+			path = new Node[64];
+			rewards = new double[numPlayers];
+			random = new SplittableRandom(seed);
+		}
+
+		/**
+		 * Generates a player's moves at the current position into the buffer
+		 * @param player player to move
+		 * @return number of moves
+		 */
+		int generate(int player) {
+			int count = generator.getAllMoves(position, player, buffers, 0);
+			buffer = buffers[0];
+			return count;
+		}
+
+		/**
+		 * Sorts the first moves in the buffer best first
+		 * @param count number of moves
+		 * @param player player moving
+		 */
+		void order(int count, int player) {
+			orderMoves(buffer, count, player);
+		}
+
+		/**
+		 * Points the tree at a new position, reusing the subtree reached by the moves
+		 * played since the last search if there is one
+		 * @param start position to search from
+		 * @param playerIndex index of player to move
+		 * @param stop time to stop
+		 */
+		void prepare(BitBoard start, int playerIndex, long stop) {
+			this.stop = stop;
+			Node reused = null;
+			if(root != null && start.getPly() >= rootPly && start.getKey(rootPly) == rootKey) {
+				reused = root;
+				for(int ply = rootPly; ply < start.getPly() && reused != null; ply++) {
+					reused = reused.moves == null ? null : child(reused, start.getMove(ply));
+				}
+			}
+			root = reused != null && reused.player == playerIndex ? reused : new Node(playerIndex);
+			position = new BitBoard(start);
+			rootPly = start.getPly();
+			rootKey = start.getKey();
+		}
+
+		/**
+		 * Finds the child of a node reached by a move
+		 * @param n parent node
+		 * @param move encoded move
+		 * @return child, or null if it was never created
+		 */
+		Node child(Node n, int move) {
+			for(int i = 0; i < n.moves.length; i++) {
+				if(n.moves[i] == move) return n.children[i];
+			}
+			return null;
+		}
+
+		@Override
+		public Long call() {
+			long count = 0;
+			do {
+				iterate();
+				count++;
+			} while(System.nanoTime() < stop && !aborted);
+			return count;
+		}
+
+		/**
+		 * Runs one selection, expansion, playout and backpropagation
+		 */
+		void iterate() {
+			/** Select, expanding the first untried move met */
+			Node n = root;
+			int depth = 0;
+			path[depth++] = n;
+			while(position.getWinner() < 0 && depth < path.length) {
+				if(n.moves == null) n.expand(this);
+				if(n.moves.length == 0) break;
+				int index = n.tried < n.moves.length ? n.tried++ : select(n);
+				int move = n.moves[index];
+				position.makeMove(MoveGenerator.getSrc(move), MoveGenerator.getDst(move));
+				boolean created = n.children[index] == null;
+				if(created) n.children[index] = new Node(next(n.player));
+				n = n.children[index];
+				path[depth++] = n;
+				if(created) break;
+			}
+
+			playout(n.player);
+
+			/** Backpropagate. Each node's reward is for the player who moved into it */
+			for(int i = depth - 1; i >= 0; i--) {
+				Node node = path[i];
+				node.visits++;
+				if(i > 0) node.reward += rewards[path[i-1].player];
+			}
+			while(position.getPly() > rootPly) position.unmakeMove();
+		}
+
+		/**
+		 * Picks the child with the highest UCT value
+		 * @param n node whose moves have all been tried
+		 * @return index of the chosen move
+		 */
+		int select(Node n) {
+			double logVisits = Math.log(n.visits);
+			int best = 0;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			for(int i = 0; i < n.children.length; i++) {
+				Node c = n.children[i];
+				double value = c.reward / c.visits + EXPLORATION*Math.sqrt(logVisits / c.visits);
+				if(value > bestValue) {
+					bestValue = value;
+					best = i;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Plays a few rounds from the current position and fills in each player's reward.
+		 * The moves stay on the position's undo stack.
+		 * @param player player to move
+		 */
+		void playout(int player) {
+			for(int ply = 0; ply < PLAYOUT_ROUNDS*numPlayers && position.getWinner() < 0; ply++) {
+				int count = generate(player);
+				if(count > 0) {
+					int move = random.nextDouble() < RANDOM_MOVE_CHANCE ? buffer[random.nextInt(count)] : greedy(player, count);
+					position.makeMove(MoveGenerator.getSrc(move), MoveGenerator.getDst(move));
+				}
+				player = next(player);
+			}
+
+			int winner = position.getWinner();
+			if(winner >= 0) {
+				for(int p = 0; p < numPlayers; p++) rewards[p] = p == winner ? 1 : 0;
+				return;
+			}
+			/** Score each player by their distance from home against the others' mean */
+			int total = 0;
+			for(int p = 0; p < numPlayers; p++) {
+				rewards[p] = position.getDistanceSum(p);
+				total += rewards[p];
+			}
+			for(int p = 0; p < numPlayers; p++) {
+				double others = (total - rewards[p]) / (numPlayers - 1);
+				rewards[p] = 1 / (1 + Math.exp((rewards[p] - others) / REWARD_SCALE));
+			}
+		}
+
+		/**
+		 * Picks the move in the buffer gaining the most ground, breaking ties at random
+		 * @param player player moving
+		 * @param count number of moves in the buffer
+		 * @return encoded move
+		 */
+		int greedy(int player, int count) {
+			int[] dist = distance[player];
+			int best = -1, bestGain = Integer.MIN_VALUE, ties = 0;
+			for(int i = 0; i < count; i++) {
+				int move = buffer[i];
+				int gain = dist[MoveGenerator.getSrc(move)] - dist[MoveGenerator.getDst(move)];
+				if(gain > bestGain) {
+					bestGain = gain;
+					best = move;
+					ties = 1;
+				}
+				else if(gain == bestGain && random.nextInt(++ties) == 0) best = move;
+			}
+			return best;
+		}
+	}
+
+	/**
+	 * Helper method. Sorts moves so that moves gaining the most ground come first
+	 * @param list encoded moves
+	 * @param count number of moves
+	 * @param player player moving
+	 */
+	private void orderMoves(int[] list, int count, int player) {
+		int[] dist = distance[player];
+		/** Insertion sort by gain, descending */
+		for(int i = 1; i < count; i++) {
+			int move = list[i];
+			int gain = dist[MoveGenerator.getSrc(move)] - dist[MoveGenerator.getDst(move)];
+			int j = i - 1;
+			while(j >= 0 && dist[MoveGenerator.getSrc(list[j])] - dist[MoveGenerator.getDst(list[j])] < gain) {
+				list[j+1] = list[j];
+				j--;
+			}
+			list[j+1] = move;
+		}
+	}
+
+	/**
+	 * Helper method. Returns the player who moves after a given player
+	 * @param player index of player
+	 * @return index of next player
+	 */
+	private int next(int player) {
+		return player == numPlayers - 1 ? 0 : player + 1;
+	}
+
+	/**
+	 * Stops the worker threads. The search can't be used afterwards.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Returns the number of playouts run by the last search, across all workers
+	 * @return playouts
+	 */
+	public long getPlayouts() {
+		return playouts;
+	}
+
+	/**
+	 * Returns the playout rate of the last search
+	 * @return playouts per second
+	 */
+	public double getPlayoutsPerSecond() {
+		return elapsed == 0 ? 0 : playouts * 1e9 / elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("MonteCarloSearch[playouts=%d, playoutsPerSecond=%.0f]", playouts, getPlayoutsPerSecond());
+	}
+}
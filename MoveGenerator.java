@@ -0,0 +1,170 @@
+import java.util.Arrays;
+
+/**
+ * Generates moves for a BitBoard into caller-supplied int buffers. Visited cells
+ * are tracked with an epoch-stamped array, so starting a new search is a single
+ * increment instead of clearing every cell, and nothing is allocated after
+ * construction.
+ *
+ * A generator holds scratch state and must not be shared between threads.
+ */
+public class MoveGenerator {
+
+	/** Moves per piece a new move buffer has room for */
+	private static final int INITIAL_MOVES_PER_PIECE = 16;
+
+	/** Layout of the board */
+	private BoardLayout layout;
+	/** Neighbor table of the layout */
+	private int[] neighbors;
+	/** Jump table of the layout */
+	private int[] jumps;
+	/** Epoch in which each cell was last visited */
+	private int[] stamps;
+	/** Current epoch. Cells stamped with it have been visited in this search */
+	private int epoch;
+	/** Cells waiting to be jumped from */
+	private int[] stack;
+
+	/**
+	 * Constructor. Creates a generator for boards with a given layout
+	 * @param layout board layout
+	 */
+	public MoveGenerator(BoardLayout layout) {
+		this.layout = layout;
+		neighbors = layout.getNeighbors();
+		jumps = layout.getJumps();
+		stamps = new int[layout.getSize()];
+		stack = new int[layout.getSize()];
+		epoch = 0;
+	}
+
+	/**
+	 * Finds every cell the piece on a given cell can move to and writes them to a buffer.
+	 * Each destination is written once.
+	 * @param position position to search
+	 * @param src cell index of the piece
+	 * @param moves buffer receiving destination cell indices
+	 * @param start index in moves to write the first destination to
+	 * @return number of destinations written
+	 */
+	public int getMoves(BitBoard position, int src, int[] moves, int start) {
+		nextEpoch();
+		stamps[src] = epoch;
+		int count = start;
+
+		/** Add valid immediate moves */
+		int base = src*BoardLayout.DIRECTIONS;
+		for(int d = 0; d < BoardLayout.DIRECTIONS; d++) {
+			int nbr = neighbors[base + d];
+			if(nbr >= 0 && position.isEmpty(nbr)) moves[count++] = nbr;
+		}
+
+		/** Add valid jumps. Every landing cell is pushed and jumped from in turn */
+		int top = 0;
+		stack[top++] = src;
+		while(top > 0) {
+			int from = stack[--top]*BoardLayout.DIRECTIONS;
+			for(int d = 0; d < BoardLayout.DIRECTIONS; d++) {
+				int land = jumps[from + d];
+				if(land < 0 || stamps[land] == epoch || !position.isEmpty(land)) continue;
+				if(position.isEmpty(neighbors[from + d])) continue;
+				stamps[land] = epoch;
+				/** Landings next to src were already written as immediate moves */
+				if(!isStep(src, land)) moves[count++] = land;
+				stack[top++] = land;
+			}
+		}
+		return count - start;
+	}
+
+	/**
+	 * Finds every move a player can make and writes them to a buffer as encoded moves.
+	 * The buffer is allocated on first use and replaced by a larger copy whenever it
+	 * may not hold the next piece's moves, so it only grows as large as the player's
+	 * move lists actually get.
+	 * @param position position to search
+	 * @param playerIndex index of player to move
+	 * @param buffers holder of the buffer. The slot may be null or replaced
+	 * @param slot index of the buffer in buffers
+	 * @return number of moves written
+	 */
+	public int getAllMoves(BitBoard position, int playerIndex, int[][] buffers, int slot) {
+		int[] moves = buffers[slot];
+		if(moves == null) moves = buffers[slot] = new int[getInitialCapacity()];
+		/** A piece can reach at most every cell */
+		int room = layout.getCellCount();
+		long[] pieces = position.getPieces(playerIndex);
+		int count = 0;
+		for(int src = BoardLayout.nextSetBit(pieces, 0); src >= 0; src = BoardLayout.nextSetBit(pieces, src + 1)) {
+			if(moves.length - count < room) moves = buffers[slot] = Arrays.copyOf(moves, Math.max(2*moves.length, count + room));
+			int first = count;
+			count += getMoves(position, src, moves, count);
+			for(int i = first; i < count; i++) moves[i] = encode(src, moves[i]);
+		}
+		return count;
+	}
+
+	/**
+	 * Helper method. Returns the size a new move buffer starts at. This is room for
+	 * a few moves per piece, and never less than one piece could have
+	 * @return initial move buffer size
+	 */
+	private int getInitialCapacity() {
+		return Math.max(layout.getCellCount(), layout.getTriangleSize()*INITIAL_MOVES_PER_PIECE);
+	}
+
+	/**
+	 * Helper method. Determines if two cells are adjacent
+	 * @param a first cell index
+	 * @param b second cell index
+	 * @return true if b is one step from a, false otherwise
+	 */
+	private boolean isStep(int a, int b) {
+		int base = a*BoardLayout.DIRECTIONS;
+		for(int d = 0; d < BoardLayout.DIRECTIONS; d++) {
+			if(neighbors[base + d] == b) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Helper method. Starts a new search, clearing the stamps only when the epoch wraps
+	 */
+	private void nextEpoch() {
+		epoch++;
+		if(epoch == Integer.MAX_VALUE) {
+			Arrays.fill(stamps, 0);
+			epoch = 1;
+		}
+	}
+
+	/**
+	 * Encodes a move from one cell to another as a single int. On large boards a
+	 * source index past 32767 makes the move negative, so only -1 means no move
+	 * @param src source cell index
+	 * @param dst destination cell index
+	 * @return encoded move
+	 */
+	public static int encode(int src, int dst) {
+		return (src << 16) | dst;
+	}
+
+	/**
+	 * Returns the source cell of an encoded move
+	 * @param move encoded move
+	 * @return source cell index
+	 */
+	public static int getSrc(int move) {
+		return move >>> 16;
+	}
+
+	/**
+	 * Returns the destination cell of an encoded move
+	 * @param move encoded move
+	 * @return destination cell index
+	 */
+	public static int getDst(int move) {
+		return move & 0xFFFF;
+	}
+}
@@ -0,0 +1,14 @@
+/**
+ * A strategy that picks moves for a computer player
+ */
+public interface MoveSearch {
+
+	/**
+	 * Finds the best move for a player within a time budget. The position is not modified.
+	 * @param start position to search from
+	 * @param playerIndex index of player to move
+	 * @param budgetMillis time budget in milliseconds
+	 * @return encoded best move, or -1 if the player has no moves
+	 */
+	public int findBestMove(BitBoard start, int playerIndex, long budgetMillis);
+}
@@ -0,0 +1,321 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An opening book: statistics of the moves played from early positions of recorded
+ * games, stored sorted in a file and looked up by binary search over a memory map.
+ * A computer player can answer from the book instantly instead of searching.
+ *
+ * The file starts with a 20-byte header: the magic number "CCOB", a version, the
+ * radius, the number of players and the number of entries. Entries follow, 20 bytes
+ * each, sorted by position key and then by move:
+ *
+ *   long  position key, the Zobrist key mixed with the player to move
+ *   int   encoded move
+ *   int   games in which the move was played from the position
+ *   int   games of those won by the player who played it
+ *
+ * A book is built from a GameArchive:
+ *
+ * Usage: java OpeningBook --archive FILE --out FILE [--radius R] [--players 2|4|6]
+ *                         [--plies N] [--min-games N]
+ * where only the first N plies of each game are used, and moves played in fewer
+ * than min-games games are left out.
+ */
+public class OpeningBook implements Closeable {
+
+	/** Magic number at the start of the file, "CCOB" */
+	public static final int MAGIC = 0x43434F42;
+	/** Version of the format */
+	public static final int VERSION = 1;
+	/** Size of the file header in bytes */
+	public static final int HEADER_SIZE = 20;
+	/** Size of an entry in bytes */
+	public static final int ENTRY_SIZE = 20;
+	/** Mixed into the position key once per player index, so keys differ by player to move */
+	private static final long PLAYER_KEY = 0x9E3779B97F4A7C15L;
+
+	/** Book file, mapped */
+	private MappedByteBuffer entries;
+	/** Board radius */
+	private int radius;
+	/** Number of players */
+	private int players;
+	/** Number of entries */
+	private int size;
+	/** Scratch mask for checking that a book move is legal */
+	private long[] moveMask;
+
+	/**
+	 * Opens a book for lookups. A book is not safe to share between threads; give
+	 * each thread its own.
+	 * @param file book file
+	 * @throws IOException if the file cannot be read or is not a book
+	 */
+	public OpeningBook(File file) throws IOException {
+		try(RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			/** Error Handling: The file must start with the magic number and a known version, and fit in one mapping */
+			if(in.length() < HEADER_SIZE || in.readInt() != MAGIC) throw new IOException("Not an opening book");
+			int version = in.readInt();
+			if(version != VERSION) throw new IOException("Unknown opening book version " + version);
+			radius = in.readInt();
+			players = in.readInt();
+			size = in.readInt();
+			if(radius < 2 || (players != 2 && players != 4 && players != 6)) throw new IOException("Bad opening book header");
+			if(size < 0 || HEADER_SIZE + (long) size*ENTRY_SIZE > in.length() || (long) size*ENTRY_SIZE > Integer.MAX_VALUE)
+				throw new IOException("Bad opening book size " + size);
+			entries = in.getChannel().map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) size*ENTRY_SIZE);
+		}
+		moveMask = new long[BoardLayout.forRadius(radius).getWords()];
+	}
+
+	/**
+	 * Returns the key of a position in the book
+	 * @param key Zobrist key of the position
+	 * @param playerIndex index of player to move
+	 * @return book key
+	 */
+	public static long getBookKey(long key, int playerIndex) {
+		return key ^ PLAYER_KEY*(playerIndex + 1);
+	}
+
+	/**
+	 * Finds the book move for a position: the move with the best win rate, counting
+	 * one extra win and one extra loss so that rarely played moves are not trusted
+	 * too much. The move is checked to be legal. Nothing is allocated.
+	 * @param position position to look up
+	 * @param playerIndex index of player to move
+	 * @return encoded move, or -1 if the position is not in the book
+	 */
+	public int getMove(BitBoard position, int playerIndex) {
+		if(position.getLayout().getRadius() != radius || position.getNumPlayers() != players) return -1;
+		long key = getBookKey(position.getKey(), playerIndex);
+		int best = -1;
+		double bestScore = -1;
+		for(int i = find(key); i < size && getKey(i) == key; i++) {
+			double score = (getWins(i) + 1.0) / (getGames(i) + 2.0);
+			if(score > bestScore && isLegal(position, playerIndex, getMove(i))) {
+				best = getMove(i);
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Finds the first entry of a position by binary search
+	 * @param key book key of the position
+	 * @return index of the first entry with the key, or of the first entry after it
+	 */
+	public int find(long key) {
+		int low = 0, high = size;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(getKey(mid) < key) low = mid + 1;
+			else high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Helper method. Checks that a book move is legal, in case of a key collision
+	 * @param position position to move in
+	 * @param playerIndex index of player to move
+	 * @param move encoded move
+	 * @return true if the move is legal, false otherwise
+	 */
+	private boolean isLegal(BitBoard position, int playerIndex, int move) {
+		int src = MoveGenerator.getSrc(move), dst = MoveGenerator.getDst(move);
+		if(src >= position.getLayout().getSize() || dst >= position.getLayout().getSize()) return false;
+		if(position.getOwner(src) != playerIndex) return false;
+		position.getMoves(src, moveMask);
+		return BoardLayout.testBit(moveMask, dst);
+	}
+
+	/**
+	 * Returns the book key of an entry
+	 * @param i entry index
+	 * @return book key
+	 */
+	public long getKey(int i) {
+		return entries.getLong(i*ENTRY_SIZE);
+	}
+
+	/**
+	 * Returns the move of an entry
+	 * @param i entry index
+	 * @return encoded move
+	 */
+	public int getMove(int i) {
+		return entries.getInt(i*ENTRY_SIZE + 8);
+	}
+
+	/**
+	 * Returns the number of games an entry's move was played in
+	 * @param i entry index
+	 * @return number of games
+	 */
+	public int getGames(int i) {
+		return entries.getInt(i*ENTRY_SIZE + 12);
+	}
+
+	/**
+	 * Returns the number of games an entry's move was played in and won
+	 * @param i entry index
+	 * @return number of wins
+	 */
+	public int getWins(int i) {
+		return entries.getInt(i*ENTRY_SIZE + 16);
+	}
+
+	/**
+	 * Returns the number of entries
+	 * @return number of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the board radius of the book
+	 * @return radius
+	 */
+	public int getRadius() {
+		return radius;
+	}
+
+	/**
+	 * Returns the number of players of the book
+	 * @return number of players
+	 */
+	public int getPlayers() {
+		return players;
+	}
+
+	/**
+	 * Releases the book. The mapping is freed when it is garbage collected.
+	 */
+	@Override
+	public void close() {
+		entries = null;
+		size = 0;
+	}
+
+	/**
+	 * Builds a book from the command line
+	 * @param args options, see the class comment
+	 */
+	public static void main(String[] args) throws IOException {
+		String archive = null, out = null;
+		int radius = App.BOARD_RADIUS, players = 2, plies = 20, minGames = 2;
+		for(int i = 0; i < args.length; i++) {
+			/** Error Handling: Every option takes a value */
+			if(i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + args[i]);
+			String value = args[++i];
+			switch(args[i-1]) {
+				case "--archive": archive = value; break;
+				case "--out": out = value; break;
+				case "--radius": radius = Integer.parseInt(value); break;
+				case "--players": players = Integer.parseInt(value); break;
+				case "--plies": plies = Integer.parseInt(value); break;
+				case "--min-games": minGames = Integer.parseInt(value); break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i-1]);
+			}
+		}
+		/** Error Handling: An archive and an output file must be given */
+		if(archive == null || out == null) throw new IllegalArgumentException("--archive and --out are required");
+
+		long start = System.nanoTime();
+		try(GameArchive games = new GameArchive(new File(archive))) {
+			int count = build(games, radius, players, plies, minGames, new File(out));
+			System.out.printf("%d entries from %d games in %.3f s%n", count, games.size(), (System.nanoTime() - start) / 1e9);
+		}
+	}
+
+	/**
+	 * Builds a book from the first plies of every game in an archive with the given
+	 * radius and number of players
+	 * @param games archive of games
+	 * @param radius board radius
+	 * @param players number of players
+	 * @param plies number of plies of each game to use
+	 * @param minGames fewest games a move must be played in to be kept
+	 * @param out book file to write
+	 * @return number of entries written
+	 * @throws IOException if the book cannot be written
+	 */
+	public static int build(GameArchive games, int radius, int players, int plies, int minGames, File out) throws IOException {
+		/** Games and wins of each move from each position, by book key and then move */
+		HashMap<Long, HashMap<Integer, int[]>> stats = new HashMap<Long, HashMap<Integer, int[]>>();
+		BoardLayout layout = BoardLayout.forRadius(radius);
+		for(int g = 0; g < games.size(); g++) {
+			GameRecord record = games.get(g);
+			if(record.getRadius() != radius || record.getPlayers() != players) continue;
+			BitBoard position = new BitBoard(layout, players);
+			for(int ply = 0; ply < Math.min(plies, record.getMoveCount()); ply++) {
+				int move = record.getMove(ply);
+				/** The mover is the owner of the piece, so games with passed turns are counted right */
+				int mover = position.getOwner(MoveGenerator.getSrc(move));
+				long key = getBookKey(position.getKey(), mover);
+				HashMap<Integer, int[]> moves = stats.get(key);
+				if(moves == null) {
+					moves = new HashMap<Integer, int[]>();
+					stats.put(key, moves);
+				}
+				int[] counts = moves.get(move);
+				if(counts == null) {
+					counts = new int[2];
+					moves.put(move, counts);
+				}
+				counts[0]++;
+				if(record.getWinner() == mover) counts[1]++;
+				position.makeMove(MoveGenerator.getSrc(move), MoveGenerator.getDst(move));
+			}
+		}
+
+		/** Sort by key, then by move, keeping moves played often enough */
+		long[] keys = new long[stats.size()];
+		int n = 0;
+		for(long key : stats.keySet()) keys[n++] = key;
+		Arrays.sort(keys);
+		ArrayList<long[]> entries = new ArrayList<long[]>();
+		for(long key : keys) {
+			ArrayList<Integer> moves = new ArrayList<Integer>();
+			for(Map.Entry<Integer, int[]> e : stats.get(key).entrySet()) {
+				if(e.getValue()[0] >= minGames) moves.add(e.getKey());
+			}
+			Collections.sort(moves);
+			for(int move : moves) {
+				int[] counts = stats.get(key).get(move);
+				entries.add(new long[] {key, move, counts[0], counts[1]});
+			}
+		}
+
+		try(DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out)))) {
+			data.writeInt(MAGIC);
+			data.writeInt(VERSION);
+			data.writeInt(radius);
+			data.writeInt(players);
+			data.writeInt(entries.size());
+			for(long[] e : entries) {
+				data.writeLong(e[0]);
+				data.writeInt((int) e[1]);
+				data.writeInt((int) e[2]);
+				data.writeInt((int) e[3]);
+			}
+		}
+		return entries.size();
+	}
+}
@@ -0,0 +1,241 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Root-parallel version of SearchEngine. Each iteration of iterative deepening
+ * splits the root moves across a ForkJoinPool. Every worker searches its moves on
+ * its own copy of the position with its own engine, and the results are reduced
+ * to the best move. Workers share the best score found so far as their alpha, and
+ * share a transposition table if one is given.
+ */
+public class ParallelSearch implements MoveSearch {
+
+	/** Largest number of root moves searched by one task without splitting */
+	private static final int SPLIT_THRESHOLD = 2;
+	/** Result of a task that found no move better than the shared alpha */
+	private static final long NO_RESULT = Long.MIN_VALUE;
+
+	/** Pool that runs the root tasks */
+	private ForkJoinPool pool;
+	/** Engine of each worker thread */
+	private ThreadLocal<SearchEngine> engines;
+	/** Engine used to generate and order root moves */
+	private SearchEngine rootEngine;
+	/** Shared transposition table, or null */
+	private TranspositionTable table;
+	/** Deepest iteration that finished */
+	private int depthReached;
+	/** Nodes visited by the last search */
+	private LongAdder nodes;
+
+	/**
+	 * Constructor. Creates a search with one worker per available processor
+	 * @param layout board layout
+	 * @param numPlayers number of players
+	 * @param table transposition table shared by all workers, or null
+	 */
+	public ParallelSearch(BoardLayout layout, int numPlayers, TranspositionTable table) {
+		this(layout, numPlayers, table, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructor. Creates a search with a given number of workers
+	 * @param layout board layout
+	 * @param numPlayers number of players
+	 * @param table transposition table shared by all workers, or null
+	 * @param parallelism number of worker threads
+	 */
+	public ParallelSearch(final BoardLayout layout, final int numPlayers, final TranspositionTable table, int parallelism) {
+		pool = new ForkJoinPool(parallelism);
+		engines = new ThreadLocal<SearchEngine>() {
+			protected SearchEngine initialValue() {
+				return new SearchEngine(layout, numPlayers, table);
+			}
+		};
+		rootEngine = new SearchEngine(layout, numPlayers, table);
+		this.table = table;
+		nodes = new LongAdder();
+	}
+
+	/**
+	 * Finds the best move for a player within a time budget. The position is not modified.
+	 * The first iteration always finishes, so a move is returned even if the budget is tiny.
+	 * @param start position to search from
+	 * @param playerIndex index of player to move
+	 * @param budgetMillis time budget in milliseconds
+	 * @return encoded best move, or -1 if the player has no moves
+	 */
+	@Override
+	public int findBestMove(BitBoard start, int playerIndex, long budgetMillis) {
+		long stop = System.nanoTime() + budgetMillis*1000000L;
+		depthReached = 0;
+		nodes.reset();
+
+		int[] rootMoves = rootEngine.getRootMoves(start, playerIndex);
+		int count = rootMoves.length;
+		if(count == 0) return -1;
+
+		int best = rootMoves[0];
+		for(int depth = 1; depth <= SearchEngine.MAX_DEPTH; depth++) {
+			AtomicInteger alpha = new AtomicInteger(-SearchEngine.WIN - 1);
+			AtomicBoolean timedOut = new AtomicBoolean();
+			RootTask task = new RootTask(start, playerIndex, rootMoves, 0, count, depth, alpha, stop, timedOut);
+			long result = pool.invoke(task);
+			if(timedOut.get()) break;
+			/** Error Handling: Every score lies inside the starting window, so a finished iteration has a best move */
+			if(result == NO_RESULT) throw new IllegalStateException("No root move scored at depth " + depth);
+
+			/** Keep this iteration's best move and search it first in the next one */
+			int bestIndex = getIndex(result);
+			best = rootMoves[bestIndex];
+			System.arraycopy(rootMoves, 0, rootMoves, 1, bestIndex);
+			rootMoves[0] = best;
+			depthReached = depth;
+
+			/** Stop early once a forced win is found or time is nearly up */
+			if(getScore(result) >= SearchEngine.WIN - SearchEngine.MAX_DEPTH || System.nanoTime() >= stop) break;
+		}
+		return best;
+	}
+
+	/**
+	 * Searches a range of root moves, splitting it in half until it is small enough
+	 * to search directly
+	 */
+	private class RootTask extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 1L;
+
+		/** Root position. Shared by all tasks and never modified */
+		private BitBoard start;
+		/** Player to move at the root */
+		private int playerIndex;
+		/** Ordered root moves */
+		private int[] rootMoves;
+		/** Range of root moves to search, from inclusive to exclusive */
+		private int from, to;
+		/** Depth to search */
+		private int depth;
+		/** Best score found by any task in this iteration */
+		private AtomicInteger alpha;
+		/** Time by which the search must stop */
+		private long stop;
+		/** Set by any task whose search ran out of time */
+		private AtomicBoolean timedOut;
+
+		RootTask(BitBoard start, int playerIndex, int[] rootMoves, int from, int to, int depth,
+				AtomicInteger alpha, long stop, AtomicBoolean timedOut) {
+			this.start = start;
+			this.playerIndex = playerIndex;
+			this.rootMoves = rootMoves;
+			this.from = from;
+			this.to = to;
+			this.depth = depth;
+			this.alpha = alpha;
+			this.stop = stop;
+			this.timedOut = timedOut;
+		}
+
+		@Override
+		protected Long compute() {
+			/** Split the range and reduce the halves to the better result */
+			if(to - from > SPLIT_THRESHOLD) {
+				int mid = (from + to) >>> 1;
+				RootTask left = new RootTask(start, playerIndex, rootMoves, from, mid, depth, alpha, stop, timedOut);
+				RootTask right = new RootTask(start, playerIndex, rootMoves, mid, to, depth, alpha, stop, timedOut);
+				left.fork();
+				long r = right.compute();
+				long l = left.join();
+				return better(l, r);
+			}
+
+			/** Search this range on a private copy of the position */
+			SearchEngine engine = engines.get();
+			BitBoard position = new BitBoard(start);
+			long result = NO_RESULT;
+			for(int i = from; i < to; i++) {
+				int bound = alpha.get();
+				int score = engine.scoreMove(position, playerIndex, rootMoves[i], depth, bound, stop);
+				nodes.add(engine.getNodes());
+				if(engine.isTimedOut()) {
+					timedOut.set(true);
+					return NO_RESULT;
+				}
+				/** Scores at or below the bound are only upper bounds */
+				if(score > bound) {
+					result = better(result, pack(score, i));
+					while(true) {
+						int current = alpha.get();
+						if(score <= current || alpha.compareAndSet(current, score)) break;
+					}
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Helper method. Packs a score and root move index into one result
+	 * @param score score of the move
+	 * @param index index of the move in the root move list
+	 * @return packed result
+	 */
+	private static long pack(int score, int index) {
+		return ((long) score << 32) | index;
+	}
+
+	/**
+	 * Helper method. Returns the score of a packed result
+	 * @param result packed result
+	 * @return score
+	 */
+	private static int getScore(long result) {
+		return (int) (result >> 32);
+	}
+
+	/**
+	 * Helper method. Returns the root move index of a packed result
+	 * @param result packed result
+	 * @return index of the move in the root move list
+	 */
+	private static int getIndex(long result) {
+		return (int) result;
+	}
+
+	/**
+	 * Helper method. Picks the better of two results: the higher score, or the move
+	 * earlier in the root move list on a tie
+	 * @param a first result
+	 * @param b second result
+	 * @return better result
+	 */
+	private static long better(long a, long b) {
+		if(a == NO_RESULT) return b;
+		if(b == NO_RESULT) return a;
+		if(getScore(a) != getScore(b)) return getScore(a) > getScore(b) ? a : b;
+		return getIndex(a) < getIndex(b) ? a : b;
+	}
+
+	/**
+	 * Returns the depth of the deepest iteration the last search finished
+	 * @return depth reached
+	 */
+	public int getDepthReached() {
+		return depthReached;
+	}
+
+	/**
+	 * Returns the number of nodes visited by the last search, across all workers
+	 * @return nodes searched
+	 */
+	public long getNodes() {
+		return nodes.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "ParallelSearch[depth=" + depthReached + ", nodes=" + getNodes() + ", table=" + table + "]";
+	}
+}
@@ -0,0 +1,319 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Perft: counts the move sequences of a given length from a position. Used to check
+ * that the fast move generators agree with the reference one in Board, and to
+ * measure move generation speed.
+ *
+ * Players move in turn. A position where a player has won, or where the player to
+ * move has no moves, ends its line and counts nothing below it. With bulk counting,
+ * the moves at the last ply are counted without being made.
+ *
+ * The fast count walks a BitBoard with the MoveGenerator. With --verify, the count
+ * is repeated on a Board with the reference getValidMoves, and at every position
+ * the destinations of every piece from the reference, the MoveGenerator and the
+ * BitBoard move mask are compared. The first difference stops the run.
+ *
+ * Moves are written x,y,z:x,y,z in cube coordinates. A position is given as a list
+ * of moves from the start separated by slashes.
+ *
+ * Usage: java Perft [--players 2|4|6] [--radius R] [--depth N] [--moves M1/M2/...]
+ *                   [--divide true|false] [--bulk true|false] [--verify true|false]
+ */
+public class Perft {
+
+	/** Number of players */
+	private int players = 2;
+	/** Board radius */
+	private int radius = App.BOARD_RADIUS;
+	/** Number of plies to count */
+	private int depth = 3;
+	/** Moves from the start to the counted position, or null */
+	private String moves;
+	/** Whether to print the count below each root move */
+	private boolean divide = true;
+	/** Whether to count the moves at the last ply without making them */
+	private boolean bulk = true;
+	/** Whether to check the fast generators against the reference */
+	private boolean verify = false;
+
+	/** Board layout */
+	private BoardLayout layout;
+	/** Fast move generator */
+	private MoveGenerator generator;
+	/** Move buffer for each ply, grown by the generator as needed */
+	private int[][] buffers;
+	/** Scratch buffer for one piece's destinations */
+	private int[] destinations;
+	/** Scratch move mask */
+	private long[] mask;
+
+	/**
+	 * Runs perft from the command line
+	 * @param args options, see the class comment
+	 */
+	public static void main(String[] args) {
+		Perft p = new Perft();
+		p.parse(args);
+		p.run();
+	}
+
+	/**
+	 * Helper method. Reads command-line options
+	 * @param args options
+	 */
+	private void parse(String[] args) {
+		for(int i = 0; i < args.length; i++) {
+			/** Error Handling: Every option takes a value */
+			if(i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + args[i]);
+			String value = args[++i];
+			switch(args[i-1]) {
+				case "--players": players = Integer.parseInt(value); break;
+				case "--radius": radius = Integer.parseInt(value); break;
+				case "--depth": depth = Integer.parseInt(value); break;
+				case "--moves": moves = value; break;
+				case "--divide": divide = Boolean.parseBoolean(value); break;
+				case "--bulk": bulk = Boolean.parseBoolean(value); break;
+				case "--verify": verify = Boolean.parseBoolean(value); break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i-1]);
+			}
+		}
+		/** Error Handling: There must be either 2, 4, or 6 players, and at least one ply */
+		if(players != 2 && players != 4 && players != 6) throw new IllegalArgumentException("Players must be 2, 4 or 6");
+		if(depth < 1) throw new IllegalArgumentException("Depth must be at least 1");
+	}
+
+	/**
+	 * Counts the position and prints the results
+	 */
+	public void run() {
+		Board board = new Board(radius, Arrays.copyOf(App.PLAYERS, players));
+		layout = board.getLayout();
+		generator = new MoveGenerator(layout);
+		buffers = new int[depth][];
+		destinations = new int[layout.getSize()];
+		mask = new long[layout.getWords()];
+		if(moves != null) {
+			for(String m : moves.split("/")) {
+				int move = parseMove(m);
+				/** Error Handling: Every move of the position must be legal */
+				if(!board.move(board.getNode(MoveGenerator.getSrc(move)), board.getNode(MoveGenerator.getDst(move))))
+					throw new IllegalArgumentException("Illegal move " + m);
+			}
+		}
+		BitBoard position = new BitBoard(board.getPosition());
+		int player = position.getPly() % players;
+
+		System.out.printf("perft %d players, radius %d, depth %d, %s%n",
+				players, radius, depth, bulk ? "bulk counting" : "no bulk counting");
+
+		/** Fast count, divided by root move */
+		long start = System.nanoTime();
+		int count = position.getWinner() >= 0 ? 0 : generator.getAllMoves(position, player, buffers, 0);
+		int[] rootMoves = count == 0 ? new int[0] : buffers[0];
+		Arrays.sort(rootMoves, 0, count);
+		long[] counts = new long[count];
+		long total = 0;
+		for(int i = 0; i < count; i++) {
+			if(depth == 1) {
+				counts[i] = 1;
+			} else {
+				position.makeMove(MoveGenerator.getSrc(rootMoves[i]), MoveGenerator.getDst(rootMoves[i]));
+				counts[i] = perft(position, next(player), depth - 1, 1);
+				position.unmakeMove();
+			}
+			total += counts[i];
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		if(divide) {
+			for(int i = 0; i < count; i++) System.out.println(formatMove(rootMoves[i]) + " " + counts[i]);
+		}
+		System.out.printf("nodes %d, %.3f s, %.0f nodes/sec%n", total, seconds, total / seconds);
+
+		if(!verify) return;
+
+		/** Reference count, checking every position against the fast generators */
+		start = System.nanoTime();
+		long reference = reference(board, player, depth);
+		seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("reference nodes %d, %.3f s, %.0f nodes/sec%n", reference, seconds, reference / seconds);
+		/** Error Handling: The two counts must agree */
+		if(reference != total) throw new IllegalStateException("Reference count " + reference + " != " + total);
+		System.out.println("verified");
+	}
+
+	/**
+	 * Helper method. Counts move sequences with the fast generator
+	 * @param position position to count from. Restored before returning
+	 * @param player index of player to move
+	 * @param depth plies left to count
+	 * @param ply distance from the root, selecting the move buffer
+	 * @return number of move sequences
+	 */
+	private long perft(BitBoard position, int player, int depth, int ply) {
+		if(position.getWinner() >= 0) return 0;
+		int count = generator.getAllMoves(position, player, buffers, ply);
+		int[] list = buffers[ply];
+		if(depth == 1 && bulk) return count;
+
+		long nodes = 0;
+		for(int i = 0; i < count; i++) {
+			position.makeMove(MoveGenerator.getSrc(list[i]), MoveGenerator.getDst(list[i]));
+			nodes += depth == 1 ? 1 : perft(position, next(player), depth - 1, ply + 1);
+			position.unmakeMove();
+		}
+		return nodes;
+	}
+
+	/**
+	 * Helper method. Counts move sequences with the reference generator, and checks
+	 * the fast generators at every position
+	 * @param board board to count from. Restored before returning
+	 * @param player index of player to move
+	 * @param depth plies left to count
+	 * @return number of move sequences
+	 */
+	private long reference(Board board, int player, int depth) {
+		if(board.won() >= 0) return 0;
+		long nodes = 0;
+		for(HexNode<Piece> src : getPieces(board, player)) {
+			int from = board.getIndex(src);
+			ArrayList<Integer> valid = getReferenceMoves(board, src);
+			check(board, from, valid);
+			for(int to : valid) {
+				if(depth == 1) {
+					nodes++;
+					continue;
+				}
+				board.makeMove(from, to);
+				nodes += reference(board, next(player), depth - 1);
+				board.unmakeMove();
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Helper method. Returns the distinct reference destinations of a piece, in order
+	 * @param board board to search
+	 * @param src node with the piece
+	 * @return destination cell indices
+	 */
+	private ArrayList<Integer> getReferenceMoves(Board board, HexNode<Piece> src) {
+		/** The reference can list a destination more than once */
+		HashSet<Integer> seen = new HashSet<Integer>();
+		ArrayList<Integer> valid = new ArrayList<Integer>();
+		for(HexNode<Piece> n : board.getValidMoves(src)) {
+			if(seen.add(board.getIndex(n))) valid.add(board.getIndex(n));
+		}
+		return valid;
+	}
+
+	/**
+	 * Helper method. Checks that the MoveGenerator and the BitBoard move mask give
+	 * the same destinations as the reference
+	 * @param board board being searched
+	 * @param src cell index of the piece
+	 * @param valid reference destinations
+	 */
+	private void check(Board board, int src, ArrayList<Integer> valid) {
+		BitBoard position = board.getPosition();
+		int count = generator.getMoves(position, src, destinations, 0);
+		position.getMoves(src, mask);
+
+		HashSet<Integer> fast = new HashSet<Integer>();
+		for(int i = 0; i < count; i++) fast.add(destinations[i]);
+		boolean same = fast.size() == count && fast.size() == valid.size() && fast.containsAll(valid)
+				&& BoardLayout.bitCount(mask) == valid.size();
+		for(int to : valid) same &= BoardLayout.testBit(mask, to);
+		/** Error Handling: Report the first position where the generators differ */
+		if(!same) {
+			StringBuilder line = new StringBuilder();
+			for(int ply = 0; ply < position.getPly(); ply++) {
+				if(ply > 0) line.append('/');
+				line.append(formatMove(position.getMove(ply)));
+			}
+			throw new IllegalStateException("Generators differ for the piece on " + formatCell(src)
+					+ " after moves " + line + ": reference " + valid.size() + ", generator " + count
+					+ ", mask " + BoardLayout.bitCount(mask));
+		}
+	}
+
+	/**
+	 * Helper method. Finds a player's pieces by walking the board's nodes
+	 * @param board board to search
+	 * @param playerIndex index of the player
+	 * @return nodes with the player's pieces
+	 */
+	private ArrayList<HexNode<Piece>> getPieces(Board board, int playerIndex) {
+		Color color = App.PLAYERS[playerIndex];
+		ArrayList<HexNode<Piece>> pieces = new ArrayList<HexNode<Piece>>();
+		for(int i = 0; i < layout.getSize(); i++) {
+			HexNode<Piece> n = board.getNode(i);
+			if(n != null && n.getKey() != null && n.getKey().getPlayer().equals(color)) pieces.add(n);
+		}
+		return pieces;
+	}
+
+	/**
+	 * Helper method. Parses a move written x,y,z:x,y,z
+	 * @param text move
+	 * @return encoded move
+	 */
+	private int parseMove(String text) {
+		String[] cells = text.split(":");
+		/** Error Handling: A move has a source and a destination */
+		if(cells.length != 2) throw new IllegalArgumentException("Bad move " + text);
+		return MoveGenerator.encode(parseCell(cells[0]), parseCell(cells[1]));
+	}
+
+	/**
+	 * Helper method. Parses a cell written x,y,z
+	 * @param text cell
+	 * @return cell index
+	 */
+	private int parseCell(String text) {
+		String[] coords = text.split(",");
+		/** Error Handling: A cell has three coordinates that sum to zero and lie on the board */
+		if(coords.length != 3) throw new IllegalArgumentException("Bad cell " + text);
+		int x = Integer.parseInt(coords[0].trim());
+		int y = Integer.parseInt(coords[1].trim());
+		int z = Integer.parseInt(coords[2].trim());
+		if(x + y + z != 0) throw new IllegalArgumentException("Bad cell " + text);
+		int extent = 2*(radius - 1);
+		if(Math.abs(x) > extent || Math.abs(y) > extent || !layout.isCell(layout.index(x, y)))
+			throw new IllegalArgumentException("Cell not on the board " + text);
+		return layout.index(x, y);
+	}
+
+	/**
+	 * Helper method. Writes a move as x,y,z:x,y,z
+	 * @param move encoded move
+	 * @return text of the move
+	 */
+	private String formatMove(int move) {
+		return formatCell(MoveGenerator.getSrc(move)) + ":" + formatCell(MoveGenerator.getDst(move));
+	}
+
+	/**
+	 * Helper method. Writes a cell as x,y,z
+	 * @param index cell index
+	 * @return text of the cell
+	 */
+	private String formatCell(int index) {
+		return layout.getX(index) + "," + layout.getY(index) + "," + layout.getZ(index);
+	}
+
+	/**
+	 * Helper method. Returns the index of the player after a given player
+	 * @param player index of a player
+	 * @return index of the next player
+	 */
+	private int next(int player) {
+		return player == players - 1 ? 0 : player + 1;
+	}
+}
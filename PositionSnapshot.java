@@ -0,0 +1,183 @@
+/**
+ * An immutable copy of a position: the owner of every cell as a byte array, and
+ * the moves that led to it. A snapshot never changes once built, so renderers,
+ * analysis threads and search workers can read one while the board moves on,
+ * without locks.
+ *
+ * Snapshots are copy-on-write. The owners are split into pages of about the square
+ * root of the board's size, and the snapshot after a move copies only the table of
+ * pages and the pages the move touched, sharing the rest with the one before it.
+ * It links back to the earlier snapshot, so the moves of a game are shared between
+ * its snapshots and unmaking a move just returns the earlier snapshot.
+ */
+public final class PositionSnapshot {
+
+	/** Layout of the board */
+	private final BoardLayout layout;
+	/** Number of players */
+	private final int numPlayers;
+	/** Player with a piece on each index, or -1, in pages. Never modified after construction */
+	private final byte[][] pages;
+	/** Log2 of the number of indices in a page */
+	private final int pageBits;
+	/** Snapshot before the last move, or null at the start */
+	private final PositionSnapshot parent;
+	/** Encoded last move, or -1 at the start */
+	private final int move;
+	/** Number of moves made */
+	private final int ply;
+	/** Zobrist key of the position */
+	private final long key;
+	/** Index of the winning player, or -1 if no player has won */
+	private final int winner;
+
+	/**
+	 * Helper constructor. Records the state of a position
+	 * @param position position to record
+	 * @param pages pages of the owner of every cell, no longer modified by the caller
+	 * @param pageBits log2 of the number of indices in a page
+	 * @param parent snapshot before the last move, or null at the start
+	 * @param move encoded last move, or -1 at the start
+	 */
+	private PositionSnapshot(BitBoard position, byte[][] pages, int pageBits, PositionSnapshot parent, int move) {
+		layout = position.getLayout();
+		numPlayers = position.getNumPlayers();
+		this.pages = pages;
+		this.pageBits = pageBits;
+		this.parent = parent;
+		this.move = move;
+		ply = position.getPly();
+		key = position.getKey();
+		winner = position.getWinner();
+	}
+
+	/**
+	 * Takes a snapshot of a position, including the moves that led to it
+	 * @param position position to copy
+	 * @return snapshot of the position
+	 */
+	public static PositionSnapshot of(BitBoard position) {
+		/** Replay the moves from the start, so every earlier snapshot has its own key and winner */
+		BitBoard replay = new BitBoard(position.getLayout(), position.getNumPlayers());
+		int size = replay.getLayout().getSize();
+		/** Pages of about the square root of the size keep both the page table and each page small */
+		int pageBits = (33 - Integer.numberOfLeadingZeros(size - 1)) / 2;
+		byte[][] pages = new byte[((size - 1) >> pageBits) + 1][1 << pageBits];
+		for(int i = 0; i < size; i++) pages[i >> pageBits][i & ((1 << pageBits) - 1)] = (byte) replay.getOwner(i);
+		PositionSnapshot snapshot = new PositionSnapshot(replay, pages, pageBits, null, -1);
+		for(int ply = 0; ply < position.getPly(); ply++) {
+			int m = position.getMove(ply);
+			replay.makeMove(MoveGenerator.getSrc(m), MoveGenerator.getDst(m));
+			snapshot = snapshot.after(replay);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Returns the snapshot after one more move. The position must be the one this
+	 * snapshot was taken of, with the move made on it with makeMove.
+	 * @param position position after the move
+	 * @return snapshot of the position
+	 */
+	public PositionSnapshot after(BitBoard position) {
+		/** Error Handling: The position must be exactly one move past this snapshot */
+		if(position.getPly() != ply + 1) throw new IllegalArgumentException();
+
+		int m = position.getMove(ply);
+		int src = MoveGenerator.getSrc(m), dst = MoveGenerator.getDst(m);
+		int mask = (1 << pageBits) - 1;
+		byte[][] next = pages.clone();
+		next[src >> pageBits] = pages[src >> pageBits].clone();
+		if(dst >> pageBits != src >> pageBits) next[dst >> pageBits] = pages[dst >> pageBits].clone();
+		next[dst >> pageBits][dst & mask] = pages[src >> pageBits][src & mask];
+		next[src >> pageBits][src & mask] = -1;
+		return new PositionSnapshot(position, next, pageBits, this, m);
+	}
+
+	/**
+	 * Builds a mutable position equal to this snapshot, with the same moves on its
+	 * undo stack, for a search worker to make and unmake moves on
+	 * @return new bitboard position
+	 */
+	public BitBoard toBitBoard() {
+		int[] moves = getMoves();
+		BitBoard position = new BitBoard(layout, numPlayers);
+		for(int m : moves) position.makeMove(MoveGenerator.getSrc(m), MoveGenerator.getDst(m));
+		return position;
+	}
+
+	/**
+	 * Returns the moves from the start to this snapshot
+	 * @return encoded moves, in the order they were made
+	 */
+	public int[] getMoves() {
+		int[] moves = new int[ply];
+		for(PositionSnapshot s = this; s.parent != null; s = s.parent) moves[s.ply - 1] = s.move;
+		return moves;
+	}
+
+	/**
+	 * Returns the snapshot before the last move
+	 * @return earlier snapshot, or null at the start
+	 */
+	public PositionSnapshot getParent() {
+		return parent;
+	}
+
+	/**
+	 * Returns the last move made
+	 * @return encoded move, or -1 at the start
+	 */
+	public int getLastMove() {
+		return move;
+	}
+
+	/**
+	 * Returns the index of the player with a piece on a cell
+	 * @param index cell index
+	 * @return player index, or -1 if the cell is empty
+	 */
+	public int getOwner(int index) {
+		return pages[index >> pageBits][index & ((1 << pageBits) - 1)];
+	}
+
+	/**
+	 * Returns the number of moves made
+	 * @return number of moves
+	 */
+	public int getPly() {
+		return ply;
+	}
+
+	/**
+	 * Returns the Zobrist key of the position
+	 * @return 64-bit position key
+	 */
+	public long getKey() {
+		return key;
+	}
+
+	/**
+	 * Returns the winner of the position
+	 * @return index of the winning player, or -1 if no player has won
+	 */
+	public int getWinner() {
+		return winner;
+	}
+
+	/**
+	 * Returns the number of players
+	 * @return number of players
+	 */
+	public int getNumPlayers() {
+		return numPlayers;
+	}
+
+	/**
+	 * Returns the board layout
+	 * @return layout
+	 */
+	public BoardLayout getLayout() {
+		return layout;
+	}
+}
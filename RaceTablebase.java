@@ -0,0 +1,638 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A race tablebase: the number of moves a player needs to bring every piece home,
+ * once the other armies are out of the way, along lines that never have more than
+ * a few pieces outside the goal triangle. It covers every position of one
+ * player's army with at most a few pieces left outside the goal triangle, and none
+ * of the other players' pieces. All six goal triangles share one table by symmetry.
+ *
+ * A position is ranked by two sets of the same size j: the goal cells that are
+ * still empty and the outside cells that hold pieces. Each set is ranked in the
+ * combinatorial number system, and positions with fewer pieces outside come first.
+ * The distance of each rank is one byte, 255 if home cannot be reached without
+ * more pieces outside than the table covers. Distances count the shortest lines
+ * that stay inside the table, using the same move rules as MoveGenerator. A line
+ * that briefly moves a home piece out to build a jump chain leaves the table, so
+ * distances are upper bounds on the true race, not always exact.
+ *
+ * The table is generated by retrograde analysis, one distance at a time: every
+ * unsolved position with a move to a position at distance d-1 is at distance d.
+ * Each pass is split between threads by rank.
+ *
+ * The file is a 16-byte header, the magic number "CCRT", a version, the radius and
+ * the most pieces outside, followed by one byte per rank. It is memory-mapped for
+ * lookups.
+ *
+ * Usage: java RaceTablebase --out FILE [--radius R] [--outside K] [--threads T]
+ */
+public class RaceTablebase implements Closeable {
+
+	/** Magic number at the start of the file, "CCRT" */
+	public static final int MAGIC = 0x43435254;
+	/** Version of the format */
+	public static final int VERSION = 1;
+	/** Size of the file header in bytes */
+	public static final int HEADER_SIZE = 16;
+	/** Distance of a position that cannot get home within the table */
+	public static final int UNKNOWN = 255;
+	/** Margin, in steps toward the goal, that other pieces must keep from the player's pieces */
+	private static final int DISENGAGED_MARGIN = 2;
+
+	/** Ranking of positions */
+	private Ranking ranking;
+	/** Distances by rank, mapped */
+	private MappedByteBuffer distances;
+	/** Scratch state for lookups */
+	private Worker worker;
+	/** Generator for the moves of the real position */
+	private MoveGenerator generator;
+	/** Holder of the buffer of moves of the real position, grown by the generator as needed */
+	private int[][] buffers;
+
+	/**
+	 * Opens a tablebase for lookups. A tablebase is not safe to share between threads;
+	 * give each thread its own.
+	 * @param file tablebase file
+	 * @throws IOException if the file cannot be read or is not a tablebase
+	 */
+	public RaceTablebase(File file) throws IOException {
+		try(RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			/** Error Handling: The file must start with the magic number and a known version */
+			if(in.length() < HEADER_SIZE || in.readInt() != MAGIC) throw new IOException("Not a race tablebase");
+			int version = in.readInt();
+			if(version != VERSION) throw new IOException("Unknown race tablebase version " + version);
+			int radius = in.readInt();
+			int outside = in.readInt();
+			if(radius < 2 || outside < 0) throw new IOException("Bad race tablebase header");
+			ranking = new Ranking(BoardLayout.forRadius(radius), outside);
+			/** Error Handling: The file must hold every rank */
+			if(in.length() != HEADER_SIZE + ranking.size) throw new IOException("Race tablebase is the wrong size");
+			distances = in.getChannel().map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, ranking.size);
+		}
+		worker = new Worker(ranking);
+		generator = new MoveGenerator(ranking.layout);
+		buffers = new int[1][];
+	}
+
+	/**
+	 * Determines if the table can play for a player: the player has at most the
+	 * table's number of pieces outside their goal, and every other piece is further
+	 * from that goal than the player's last piece, with a margin, so the race cannot
+	 * be helped or blocked by anyone else.
+	 * @param position position to check
+	 * @param playerIndex index of the player
+	 * @return true if the table applies, false otherwise
+	 */
+	public boolean applies(BitBoard position, int playerIndex) {
+		if(position.getLayout() != ranking.layout) return false;
+		int[] goal = ranking.layout.getGoalDistances(playerIndex);
+		long[] pieces = position.getPieces(playerIndex);
+		int outside = 0, farthest = 0;
+		for(int i = BoardLayout.nextSetBit(pieces, 0); i >= 0; i = BoardLayout.nextSetBit(pieces, i + 1)) {
+			if(goal[i] > 0) outside++;
+			farthest = Math.max(farthest, goal[i]);
+		}
+		if(outside > ranking.outside || BoardLayout.bitCount(pieces) != ranking.goalCount) return false;
+		for(int p = 0; p < position.getNumPlayers(); p++) {
+			if(p == playerIndex) continue;
+			long[] others = position.getPieces(p);
+			for(int i = BoardLayout.nextSetBit(others, 0); i >= 0; i = BoardLayout.nextSetBit(others, i + 1)) {
+				if(goal[i] <= farthest + DISENGAGED_MARGIN) return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of moves a player needs to bring every piece home, as if
+	 * the other players' pieces were not on the board
+	 * @param position position to look up
+	 * @param playerIndex index of the player
+	 * @return number of moves, or -1 if the position is not in the table
+	 */
+	public int getDistance(BitBoard position, int playerIndex) {
+		if(position.getLayout() != ranking.layout || !worker.load(position, playerIndex)) return -1;
+		int d = distances.get(worker.rank()) & 0xFF;
+		return d == UNKNOWN ? -1 : d;
+	}
+
+	/**
+	 * Finds the move that brings a player home fastest among lines that keep at most
+	 * the table's number of pieces outside the goal, when the table applies.
+	 * Nothing is allocated once the move buffer has grown to fit the position.
+	 * @param position position to move in
+	 * @param playerIndex index of player to move
+	 * @return encoded move, or -1 if the table does not apply
+	 */
+	public int getMove(BitBoard position, int playerIndex) {
+		if(!applies(position, playerIndex) || !worker.load(position, playerIndex)) return -1;
+		int count = generator.getAllMoves(position, playerIndex, buffers, 0);
+		int[] moves = buffers[0];
+		int best = -1, bestDistance = UNKNOWN;
+		for(int i = 0; i < count; i++) {
+			int src = ranking.symmetry[playerIndex][MoveGenerator.getSrc(moves[i])];
+			int dst = ranking.symmetry[playerIndex][MoveGenerator.getDst(moves[i])];
+			int rank = worker.rankAfter(src, dst);
+			if(rank < 0) continue;
+			int d = distances.get(rank) & 0xFF;
+			if(d < bestDistance) {
+				best = moves[i];
+				bestDistance = d;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the most pieces outside the goal that the table covers
+	 * @return pieces outside
+	 */
+	public int getOutside() {
+		return ranking.outside;
+	}
+
+	/**
+	 * Returns the board layout of the table
+	 * @return layout
+	 */
+	public BoardLayout getLayout() {
+		return ranking.layout;
+	}
+
+	/**
+	 * Releases the tablebase. The mapping is freed when it is garbage collected.
+	 */
+	@Override
+	public void close() {
+		distances = null;
+	}
+
+	/**
+	 * Generates a tablebase from the command line
+	 * @param args options, see the class comment
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String out = null;
+		int radius = App.BOARD_RADIUS, outside = 2, threads = Runtime.getRuntime().availableProcessors();
+		for(int i = 0; i < args.length; i++) {
+			/** Error Handling: Every option takes a value */
+			if(i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + args[i]);
+			String value = args[++i];
+			switch(args[i-1]) {
+				case "--out": out = value; break;
+				case "--radius": radius = Integer.parseInt(value); break;
+				case "--outside": outside = Integer.parseInt(value); break;
+				case "--threads": threads = Integer.parseInt(value); break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i-1]);
+			}
+		}
+		/** Error Handling: An output file must be given */
+		if(out == null) throw new IllegalArgumentException("--out is required");
+
+		long start = System.nanoTime();
+		byte[] table = generate(BoardLayout.forRadius(radius), outside, threads);
+		try(DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out)))) {
+			data.writeInt(MAGIC);
+			data.writeInt(VERSION);
+			data.writeInt(radius);
+			data.writeInt(outside);
+			data.write(table);
+		}
+
+		/** Report how many positions are each number of moves from home */
+		int[] counts = new int[UNKNOWN + 1];
+		for(byte distance : table) counts[distance & 0xFF]++;
+		for(int d = 0; d < UNKNOWN; d++) {
+			if(counts[d] > 0) System.out.printf("  distance %d: %d positions%n", d, counts[d]);
+		}
+		if(counts[UNKNOWN] > 0) System.out.printf("  unreachable: %d positions%n", counts[UNKNOWN]);
+		System.out.printf("%d positions in %.3f s%n", table.length, (System.nanoTime() - start) / 1e9);
+	}
+
+	/**
+	 * Generates the distances of every position by retrograde analysis
+	 * @param layout board layout
+	 * @param outside most pieces outside the goal
+	 * @param threads number of threads
+	 * @return distance of each rank, UNKNOWN if home cannot be reached within the table
+	 */
+	public static byte[] generate(BoardLayout layout, int outside, int threads) throws InterruptedException {
+		final Ranking ranking = new Ranking(layout, outside);
+		final byte[] table = new byte[ranking.size];
+		Arrays.fill(table, (byte) UNKNOWN);
+		/** The one position with every piece home */
+		table[0] = 0;
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		final Worker[] workers = new Worker[threads];
+		for(int t = 0; t < threads; t++) workers[t] = new Worker(ranking);
+		try {
+			for(int d = 1; d < UNKNOWN; d++) {
+				final byte level = (byte) d;
+				ArrayList<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+				for(int t = 0; t < threads; t++) {
+					final Worker worker = workers[t];
+					final int from = (int) ((long) ranking.size*t / threads);
+					final int to = (int) ((long) ranking.size*(t + 1) / threads);
+					tasks.add(new Callable<Integer>() {
+						public Integer call() {
+							return worker.solve(table, from, to, level);
+						}
+					});
+				}
+				int solved = 0;
+				for(Future<Integer> f : pool.invokeAll(tasks)) {
+					try {
+						solved += f.get();
+					} catch(ExecutionException e) {
+						throw new IllegalStateException(e.getCause());
+					}
+				}
+				if(solved == 0) break;
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return table;
+	}
+
+	/**
+	 * Ranks the positions of one army with goal triangle 0. Other goals are mapped
+	 * onto triangle 0 by a symmetry of the star. Immutable, shared by all workers.
+	 */
+	private static class Ranking {
+		/** Board layout */
+		BoardLayout layout;
+		/** Most pieces outside the goal */
+		int outside;
+		/** Number of goal cells, and of pieces in an army */
+		int goalCount;
+		/** Number of cells outside the goal */
+		int outsideCount;
+		/** Number of each goal cell by index, or -1 */
+		int[] goalNumbers;
+		/** Number of each outside cell by index, or -1 */
+		int[] outsideNumbers;
+		/** Index of each goal cell by number */
+		int[] goalCells;
+		/** Index of each outside cell by number */
+		int[] outsideCells;
+		/** Index in the frame of triangle 0 of each index, for the goal triangle of each player */
+		int[][] symmetry;
+		/** Binomial coefficients, choose[n][k] */
+		long[][] choose;
+		/** First rank of the positions with each number of pieces outside, then the total */
+		int[] offsets;
+		/** Number of ranks */
+		int size;
+
+		Ranking(BoardLayout layout, int outside) {
+			this.layout = layout;
+			this.outside = outside;
+			goalCount = layout.getTriangleSize();
+			outsideCount = layout.getCellCount() - goalCount;
+			/** Error Handling: Can only leave out as many pieces as an army has */
+			if(outside < 0 || outside > goalCount) throw new IllegalArgumentException("Bad number of pieces outside " + outside);
+
+			goalNumbers = new int[layout.getSize()];
+			outsideNumbers = new int[layout.getSize()];
+			Arrays.fill(goalNumbers, -1);
+			Arrays.fill(outsideNumbers, -1);
+			goalCells = new int[goalCount];
+			outsideCells = new int[outsideCount];
+			long[] cells = layout.getCells();
+			int g = 0, o = 0;
+			for(int i = BoardLayout.nextSetBit(cells, 0); i >= 0; i = BoardLayout.nextSetBit(cells, i + 1)) {
+				if(layout.getTriangleOf(i) == 0) {
+					goalNumbers[i] = g;
+					goalCells[g++] = i;
+				} else {
+					outsideNumbers[i] = o;
+					outsideCells[o++] = i;
+				}
+			}
+
+			/** Permutations and negations of the cube coordinates that carry each triangle onto triangle 0 */
+			symmetry = new int[6][layout.getSize()];
+			for(int t = 0; t < 6; t++) {
+				Arrays.fill(symmetry[t], -1);
+				for(int i = BoardLayout.nextSetBit(cells, 0); i >= 0; i = BoardLayout.nextSetBit(cells, i + 1)) {
+					int x = layout.getX(i), y = layout.getY(i), z = layout.getZ(i);
+					switch(t) {
+						case 0: symmetry[t][i] = layout.index(x, y); break;
+						case 1: symmetry[t][i] = layout.index(-x, -y); break;
+						case 2: symmetry[t][i] = layout.index(x, z); break;
+						case 3: symmetry[t][i] = layout.index(-x, -z); break;
+						case 4: symmetry[t][i] = layout.index(z, y); break;
+						default: symmetry[t][i] = layout.index(-z, -y); break;
+					}
+				}
+			}
+
+			choose = new long[Math.max(goalCount, outsideCount) + 1][outside + 2];
+			for(int n = 0; n < choose.length; n++) {
+				choose[n][0] = 1;
+				for(int k = 1; k < choose[n].length; k++) choose[n][k] = n == 0 ? 0 : choose[n-1][k-1] + choose[n-1][k];
+			}
+			offsets = new int[outside + 2];
+			long total = 0;
+			for(int j = 0; j <= outside; j++) {
+				offsets[j] = (int) total;
+				total += choose[goalCount][j]*choose[outsideCount][j];
+				/** Error Handling: Every rank must fit in one array */
+				if(total > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Too many positions for " + outside + " pieces outside");
+			}
+			offsets[outside + 1] = (int) total;
+			size = (int) total;
+		}
+	}
+
+	/**
+	 * Scratch state for ranking, unranking and moving through positions. A worker
+	 * must not be shared between threads.
+	 */
+	private static class Worker {
+		/** Ranking of positions */
+		Ranking ranking;
+		/** Number of pieces outside in the loaded position */
+		int count;
+		/** Empty goal cell numbers of the loaded position, ascending */
+		int[] empty;
+		/** Occupied outside cell numbers of the loaded position, ascending */
+		int[] occupied;
+		/** Scratch sets for the position after a move */
+		int[] nextEmpty, nextOccupied;
+		/** Whether each index has a piece, in the frame of triangle 0 */
+		boolean[] filled;
+		/** Indices of the pieces */
+		int[] pieces;
+		/** Destinations of one piece */
+		int[] destinations;
+		/** Epoch in which each cell was last visited, and the current epoch */
+		int[] stamps;
+		int epoch;
+		/** Cells waiting to be jumped from */
+		int[] stack;
+
+		Worker(Ranking ranking) {
+			this.ranking = ranking;
+			empty = new int[ranking.outside + 1];
+			occupied = new int[ranking.outside + 1];
+			nextEmpty = new int[ranking.outside + 2];
+			nextOccupied = new int[ranking.outside + 2];
+			int size = ranking.layout.getSize();
+			filled = new boolean[size];
+			pieces = new int[ranking.goalCount];
+			destinations = new int[size];
+			stamps = new int[size];
+			stack = new int[size];
+		}
+
+		/**
+		 * Solves every unsolved rank in a range that has a move to a position one closer to home
+		 * @param table distances by rank
+		 * @param from first rank
+		 * @param to rank after the last
+		 * @param level distance being solved
+		 * @return number of ranks solved
+		 */
+		int solve(byte[] table, int from, int to, byte level) {
+			byte previous = (byte) (level - 1);
+			int solved = 0;
+			for(int r = from; r < to; r++) {
+				if(table[r] != (byte) UNKNOWN) continue;
+				unrank(r);
+				boolean found = false;
+				for(int p = 0; p < pieces.length && !found; p++) {
+					int n = getDestinations(pieces[p]);
+					for(int i = 0; i < n; i++) {
+						int next = rankAfter(pieces[p], destinations[i]);
+						/** Positions solved in this pass are at this level, so they never match the one before */
+						if(next >= 0 && table[next] == previous) {
+							found = true;
+							break;
+						}
+					}
+				}
+				if(found) {
+					table[r] = level;
+					solved++;
+				}
+			}
+			return solved;
+		}
+
+		/**
+		 * Loads a player's army from a real position, in the frame of triangle 0
+		 * @param position position
+		 * @param playerIndex index of the player
+		 * @return true if the army is in the table, false otherwise
+		 */
+		boolean load(BitBoard position, int playerIndex) {
+			long[] mask = position.getPieces(playerIndex);
+			if(BoardLayout.bitCount(mask) != ranking.goalCount) return false;
+			int[] map = ranking.symmetry[playerIndex];
+			Arrays.fill(filled, false);
+			count = 0;
+			for(int i = BoardLayout.nextSetBit(mask, 0); i >= 0; i = BoardLayout.nextSetBit(mask, i + 1)) {
+				int c = map[i];
+				filled[c] = true;
+				if(ranking.outsideNumbers[c] >= 0) {
+					if(count == ranking.outside) return false;
+					occupied[count++] = ranking.outsideNumbers[c];
+				}
+			}
+			Arrays.sort(occupied, 0, count);
+			int e = 0;
+			for(int g = 0; g < ranking.goalCount; g++) {
+				if(!filled[ranking.goalCells[g]]) empty[e++] = g;
+			}
+			return true;
+		}
+
+		/**
+		 * Loads the position with a given rank
+		 * @param rank rank of the position
+		 */
+		void unrank(int rank) {
+			count = 0;
+			while(rank >= ranking.offsets[count + 1]) count++;
+			long q = rank - ranking.offsets[count];
+			long outsideRanks = ranking.choose[ranking.outsideCount][count];
+			unrankSet(q / outsideRanks, count, empty);
+			unrankSet(q % outsideRanks, count, occupied);
+
+			Arrays.fill(filled, false);
+			int n = 0, e = 0;
+			for(int g = 0; g < ranking.goalCount; g++) {
+				if(e < count && empty[e] == g) e++;
+				else pieces[n++] = ranking.goalCells[g];
+			}
+			for(int i = 0; i < count; i++) pieces[n++] = ranking.outsideCells[occupied[i]];
+			for(int i = 0; i < n; i++) filled[pieces[i]] = true;
+		}
+
+		/**
+		 * Returns the rank of the loaded position
+		 * @return rank
+		 */
+		int rank() {
+			return rank(empty, occupied, count);
+		}
+
+		/**
+		 * Returns the rank of the loaded position after a move, without changing it
+		 * @param src index of the piece, in the frame of triangle 0
+		 * @param dst empty index to move to, in the frame of triangle 0
+		 * @return rank after the move, or -1 if it has too many pieces outside
+		 */
+		int rankAfter(int src, int dst) {
+			int e = count, o = count;
+			System.arraycopy(empty, 0, nextEmpty, 0, count);
+			System.arraycopy(occupied, 0, nextOccupied, 0, count);
+			if(ranking.goalNumbers[src] >= 0) e = insert(nextEmpty, e, ranking.goalNumbers[src]);
+			else o = remove(nextOccupied, o, ranking.outsideNumbers[src]);
+			if(ranking.goalNumbers[dst] >= 0) e = remove(nextEmpty, e, ranking.goalNumbers[dst]);
+			else o = insert(nextOccupied, o, ranking.outsideNumbers[dst]);
+			if(e > ranking.outside) return -1;
+			return rank(nextEmpty, nextOccupied, e);
+		}
+
+		/**
+		 * Helper method. Ranks a position from its two sets
+		 * @param emptySet empty goal cell numbers, ascending
+		 * @param occupiedSet occupied outside cell numbers, ascending
+		 * @param j size of each set
+		 * @return rank
+		 */
+		int rank(int[] emptySet, int[] occupiedSet, int j) {
+			return (int) (ranking.offsets[j] + rankSet(emptySet, j)*ranking.choose[ranking.outsideCount][j] + rankSet(occupiedSet, j));
+		}
+
+		/**
+		 * Helper method. Ranks a set in the combinatorial number system
+		 * @param set numbers, ascending
+		 * @param k size of the set
+		 * @return rank among the sets of size k
+		 */
+		long rankSet(int[] set, int k) {
+			long rank = 0;
+			for(int i = 0; i < k; i++) rank += ranking.choose[set[i]][i + 1];
+			return rank;
+		}
+
+		/**
+		 * Helper method. Finds the set with a rank in the combinatorial number system
+		 * @param rank rank among the sets of size k
+		 * @param k size of the set
+		 * @param set receives the numbers, ascending
+		 */
+		void unrankSet(long rank, int k, int[] set) {
+			for(int i = k; i >= 1; i--) {
+				int c = i - 1;
+				while(c + 1 < ranking.choose.length && ranking.choose[c + 1][i] <= rank) c++;
+				set[i - 1] = c;
+				rank -= ranking.choose[c][i];
+			}
+		}
+
+		/**
+		 * Helper method. Inserts a number into an ascending set
+		 * @param set ascending numbers
+		 * @param size size of the set
+		 * @param value number to insert
+		 * @return new size
+		 */
+		int insert(int[] set, int size, int value) {
+			int i = size;
+			while(i > 0 && set[i - 1] > value) {
+				set[i] = set[i - 1];
+				i--;
+			}
+			set[i] = value;
+			return size + 1;
+		}
+
+		/**
+		 * Helper method. Removes a number from an ascending set
+		 * @param set ascending numbers
+		 * @param size size of the set
+		 * @param value number to remove, which must be in the set
+		 * @return new size
+		 */
+		int remove(int[] set, int size, int value) {
+			int i = 0;
+			while(set[i] != value) i++;
+			System.arraycopy(set, i + 1, set, i, size - i - 1);
+			return size - 1;
+		}
+
+		/**
+		 * Helper method. Determines if two cells are adjacent
+		 * @param a first cell index
+		 * @param b second cell index
+		 * @return true if b is one step from a, false otherwise
+		 */
+		boolean isStep(int a, int b) {
+			int[] neighbors = ranking.layout.getNeighbors();
+			int base = a*BoardLayout.DIRECTIONS;
+			for(int d = 0; d < BoardLayout.DIRECTIONS; d++) {
+				if(neighbors[base + d] == b) return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Helper method. Finds the destinations of a piece of the loaded position, with
+		 * the rules of MoveGenerator
+		 * @param src index of the piece
+		 * @return number of destinations written to the destinations field
+		 */
+		int getDestinations(int src) {
+			int[] neighbors = ranking.layout.getNeighbors();
+			int[] jumps = ranking.layout.getJumps();
+			epoch++;
+			if(epoch == Integer.MAX_VALUE) {
+				Arrays.fill(stamps, 0);
+				epoch = 1;
+			}
+			stamps[src] = epoch;
+			int count = 0;
+			int base = src*BoardLayout.DIRECTIONS;
+			for(int d = 0; d < BoardLayout.DIRECTIONS; d++) {
+				int nbr = neighbors[base + d];
+				if(nbr >= 0 && !filled[nbr]) destinations[count++] = nbr;
+			}
+			int top = 0;
+			stack[top++] = src;
+			while(top > 0) {
+				int from = stack[--top]*BoardLayout.DIRECTIONS;
+				for(int d = 0; d < BoardLayout.DIRECTIONS; d++) {
+					int land = jumps[from + d];
+					if(land < 0 || stamps[land] == epoch || filled[land] || !filled[neighbors[from + d]]) continue;
+					stamps[land] = epoch;
+					/** Landings next to src were already written as steps */
+					if(!isStep(src, land)) destinations[count++] = land;
+					stack[top++] = land;
+				}
+			}
+			return count;
+		}
+	}
+}
@@ -0,0 +1,430 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Game tree search for computer players. Runs iterative-deepening alpha-beta on a
+ * private copy of a BitBoard until a time budget runs out, and returns the best
+ * move of the deepest search that finished.
+ *
+ * With more than two players the search is paranoid: the player to move at the
+ * root maximizes the evaluation and every other player is assumed to minimize it.
+ * With two players this is ordinary alpha-beta.
+ *
+ * An engine can share a TranspositionTable with other engines. Its entries are keyed
+ * by the position's Zobrist key mixed with the root player and the player to move,
+ * since the same position scores differently for each.
+ *
+ * An engine holds scratch state and must not be shared between threads.
+ */
+public class SearchEngine implements MoveSearch {
+
+	/** Score of a won position. Wins found sooner score higher. Must stay below TranspositionTable.MAX_SCORE */
+	public static final int WIN = 1000000;
+	/** Deepest search iterative deepening will start */
+	public static final int MAX_DEPTH = 64;
+	/** Weight of the summed distance in a player's evaluation term */
+	private static final int DISTANCE_WEIGHT = 4;
+	/** Weight of the jump-aware estimate of moves to the goal in a player's evaluation term */
+	private static final int HOP_WEIGHT = 2;
+	/** Largest evaluation. Far inside WIN, so that no evaluation reads as a win or loss */
+	private static final int EVAL_LIMIT = WIN/2;
+	/** Number of nodes searched between checks of the clock */
+	private static final int CLOCK_INTERVAL = 1024;
+	/** Scores beyond this are wins or losses, and are stored relative to the node */
+	private static final int WIN_BOUND = WIN - 2*MAX_DEPTH;
+	/** Keys of each (root player, player to move) pair, mixed into table keys */
+	private static final long[] SIDE_KEYS = new long[36];
+	static {
+		SplittableRandom random = new SplittableRandom(0x5349444BL);
+		for(int i = 0; i < SIDE_KEYS.length; i++) SIDE_KEYS[i] = random.nextLong();
+	}
+
+	/** Layout of the board */
+	private BoardLayout layout;
+	/** Number of players */
+	private int numPlayers;
+	/** Move generator */
+	private MoveGenerator generator;
+	/** Distance of each cell from each player's goal corner */
+	private int[][] distance;
+	/** Divisor that keeps evaluations on this layout within EVAL_LIMIT */
+	private int evalScale;
+	/** Encoded moves at each ply */
+	private int[][] moves;
+	/** Ordering scores of the moves at each ply */
+	private int[][] order;
+	/** Shared transposition table, or null to search without one */
+	private TranspositionTable table;
+
+	/** Position being searched */
+	private BitBoard position;
+	/** Player to move at the root */
+	private int root;
+	/** Time by which the search must stop, from System.nanoTime */
+	private long deadline;
+	/** Set when the clock runs out during an iteration */
+	private boolean timedOut;
+	/** Nodes searched since the search started */
+	private long nodes;
+	/** Deepest iteration that finished */
+	private int depthReached;
+
+	/**
+	 * Constructor. Creates an engine for boards with a given layout and number of players
+	 * @param layout board layout
+	 * @param numPlayers number of players
+	 */
+	public SearchEngine(BoardLayout layout, int numPlayers) {
+		this(layout, numPlayers, null);
+	}
+
+	/**
+	 * Constructor. Creates an engine that caches results in a transposition table
+	 * @param layout board layout
+	 * @param numPlayers number of players
+	 * @param table transposition table, possibly shared with other engines, or null
+	 */
+	public SearchEngine(BoardLayout layout, int numPlayers, TranspositionTable table) {
+		this.layout = layout;
+		this.table = table;
+		this.numPlayers = numPlayers;
+		generator = new MoveGenerator(layout);
+
+		distance = new int[numPlayers][];
+		for(int p = 0; p < numPlayers; p++) distance[p] = layout.getCornerDistances(p);
+		evalScale = getEvalScale(layout);
+
+		moves = new int[MAX_DEPTH + 1][];
+		order = new int[MAX_DEPTH + 1][];
+	}
+
+	/**
+	 * Finds the best move for a player within a time budget. The position is not modified.
+	 * The first iteration always finishes, so a move is returned even if the budget is tiny.
+	 * @param start position to search from
+	 * @param playerIndex index of player to move
+	 * @param budgetMillis time budget in milliseconds
+	 * @return encoded best move, or -1 if the player has no moves
+	 */
+	@Override
+	public int findBestMove(BitBoard start, int playerIndex, long budgetMillis) {
+		long stop = System.nanoTime() + budgetMillis*1000000L;
+		long total = 0;
+		depthReached = 0;
+
+		BitBoard copy = new BitBoard(start);
+		int[] rootMoves = getRootMoves(copy, playerIndex);
+		int count = rootMoves.length;
+		if(count == 0) return -1;
+
+		int best = rootMoves[0];
+		for(int depth = 1; depth <= MAX_DEPTH; depth++) {
+			int alpha = -WIN - 1;
+			int bestIndex = 0;
+			for(int i = 0; i < count; i++) {
+				int score = scoreMove(copy, playerIndex, rootMoves[i], depth, alpha, stop);
+				total += nodes;
+				if(timedOut) break;
+				if(score > alpha) {
+					alpha = score;
+					bestIndex = i;
+				}
+			}
+			if(timedOut) break;
+
+			/** Keep this iteration's best move and search it first in the next one */
+			best = rootMoves[bestIndex];
+			promote(rootMoves, count, best);
+			depthReached = depth;
+
+			/** Stop early once a forced win is found or time is nearly up */
+			if(alpha >= WIN - MAX_DEPTH || System.nanoTime() >= stop) break;
+		}
+		nodes = total;
+		return best;
+	}
+
+	/**
+	 * Generates a player's moves and sorts them in the order the search tries them
+	 * @param start position to generate moves for
+	 * @param playerIndex index of player to move
+	 * @return encoded moves, exactly as many as the player has
+	 */
+	public int[] getRootMoves(BitBoard start, int playerIndex) {
+		int count = generator.getAllMoves(start, playerIndex, moves, 0);
+		orderMoves(moves[0], orderBuffer(0), playerIndex, count);
+		return Arrays.copyOf(moves[0], count);
+	}
+
+	/**
+	 * Scores one root move by searching the position after it to a given depth. The
+	 * position is restored before returning. If the clock runs out the score is
+	 * meaningless and isTimedOut() returns true.
+	 * @param start position before the move. Used as scratch by the search
+	 * @param playerIndex index of player making the move
+	 * @param move encoded move
+	 * @param depth depth to search, counting the move itself
+	 * @param alpha score the move must beat to matter. Lower scores are upper bounds
+	 * @param stop time by which the search must stop, from System.nanoTime. Ignored at depth 1
+	 * @return score of the move for the player
+	 */
+	public int scoreMove(BitBoard start, int playerIndex, int move, int depth, int alpha, long stop) {
+		position = start;
+		root = playerIndex;
+		deadline = stop;
+		timedOut = false;
+		nodes = 0;
+
+		position.makeMove(MoveGenerator.getSrc(move), MoveGenerator.getDst(move));
+		int score = search(depth - 1, 1, next(root), alpha, WIN + 1, depth > 1);
+		position.unmakeMove();
+		position = null;
+		return score;
+	}
+
+	/**
+	 * Returns whether the clock ran out during the last call to scoreMove
+	 * @return true if the last search was stopped early, false otherwise
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	/**
+	 * Helper method. Alpha-beta search below the root
+	 * @param depth remaining depth in plies
+	 * @param ply distance from the root
+	 * @param player index of player to move
+	 * @param alpha lower bound of the root player's score
+	 * @param beta upper bound of the root player's score
+	 * @param timed whether the search may be stopped by the clock
+	 * @return score of the position for the root player
+	 */
+	private int search(int depth, int ply, int player, int alpha, int beta, boolean timed) {
+		if((++nodes % CLOCK_INTERVAL) == 0 && timed && System.nanoTime() >= deadline) timedOut = true;
+		if(timedOut) return 0;
+
+		int winner = position.getWinner();
+		if(winner >= 0) return winner == root ? WIN - ply : -WIN + ply;
+		if(depth == 0 || ply >= MAX_DEPTH) return evaluate();
+
+		/** Probe the transposition table for a cutoff or a move to try first */
+		long key = 0;
+		int tableMove = -1;
+		if(table != null) {
+			key = position.getKey() ^ SIDE_KEYS[root*6 + player];
+			long entry = table.probe(key);
+			if(entry != 0) {
+				tableMove = TranspositionTable.getMove(entry);
+				if(TranspositionTable.getDepth(entry) >= depth) {
+					int score = fromTable(TranspositionTable.getScore(entry), ply);
+					int bound = TranspositionTable.getBound(entry);
+					if(bound == TranspositionTable.EXACT
+							|| (bound == TranspositionTable.LOWER && score >= beta)
+							|| (bound == TranspositionTable.UPPER && score <= alpha))
+						return score;
+				}
+			}
+		}
+
+		int count = generator.getAllMoves(position, player, moves, ply);
+		int[] plyMoves = moves[ply];
+		/** A player without moves passes */
+		if(count == 0) return search(depth - 1, ply + 1, next(player), alpha, beta, timed);
+		orderMoves(plyMoves, orderBuffer(ply), player, count);
+		if(tableMove != -1) promote(plyMoves, count, tableMove);
+
+		int alphaStart = alpha;
+		int betaStart = beta;
+		boolean maximizing = player == root;
+		int best = maximizing ? -WIN - 1 : WIN + 1;
+		int bestMove = -1;
+		for(int i = 0; i < count; i++) {
+			int move = plyMoves[i];
+			position.makeMove(MoveGenerator.getSrc(move), MoveGenerator.getDst(move));
+			int score = search(depth - 1, ply + 1, next(player), alpha, beta, timed);
+			position.unmakeMove();
+			if(timedOut) return 0;
+
+			if(maximizing) {
+				if(score > best) {
+					best = score;
+					bestMove = move;
+				}
+				if(best > alpha) alpha = best;
+			}
+			else {
+				if(score < best) {
+					best = score;
+					bestMove = move;
+				}
+				if(best < beta) beta = best;
+			}
+			if(alpha >= beta) break;
+		}
+
+		if(table != null) {
+			int bound = best <= alphaStart ? TranspositionTable.UPPER
+					: best >= betaStart ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+			table.store(key, depth, bound, toTable(best, ply), bestMove);
+		}
+		return best;
+	}
+
+	/**
+	 * Helper method. Moves a move to the front of a move list, if it is in the list
+	 * @param list encoded moves
+	 * @param count number of moves
+	 * @param move move to promote
+	 */
+	private void promote(int[] list, int count, int move) {
+		for(int i = 0; i < count; i++) {
+			if(list[i] == move) {
+				System.arraycopy(list, 0, list, 1, i);
+				list[0] = move;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Helper method. Converts a win or loss score from distance-to-root to
+	 * distance-to-node, so it stays correct when the entry is found at another ply
+	 * @param score score relative to the root
+	 * @param ply ply of the node
+	 * @return score to store
+	 */
+	private static int toTable(int score, int ply) {
+		if(score > WIN_BOUND) return score + ply;
+		if(score < -WIN_BOUND) return score - ply;
+		return score;
+	}
+
+	/**
+	 * Helper method. Inverse of toTable
+	 * @param score stored score
+	 * @param ply ply of the node
+	 * @return score relative to the root
+	 */
+	private static int fromTable(int score, int ply) {
+		if(score > WIN_BOUND) return score - ply;
+		if(score < -WIN_BOUND) return score + ply;
+		return score;
+	}
+
+	/**
+	 * Helper method. Scores the position for the root player: the opponents' mean
+	 * evaluation term minus the root player's. A player's term grows with the
+	 * distance of each of their pieces from their goal corner, and shrinks when
+	 * their pieces have jumps toward the goal open. The score is divided down on
+	 * large boards so that it stays within EVAL_LIMIT.
+	 * @return score of the position
+	 */
+	private int evaluate() {
+		int opponents = 0;
+		for(int p = 0; p < numPlayers; p++) {
+			if(p != root) opponents += evaluate(p);
+		}
+		return (opponents / (numPlayers - 1) - evaluate(root)) / evalScale;
+	}
+
+	/**
+	 * Helper method. Finds the divisor that keeps evaluations on a layout within
+	 * EVAL_LIMIT. A player's term is at most every piece at the largest distance
+	 * from the goal corner, and the hop estimate is at most the summed distance.
+	 * The divisor is 1 on boards small enough not to need it.
+	 * @param layout board layout
+	 * @return evaluation divisor
+	 */
+	private static int getEvalScale(BoardLayout layout) {
+		int[] corner = layout.getCornerDistances(0);
+		long[] cells = layout.getCells();
+		long far = 0;
+		for(int i = BoardLayout.nextSetBit(cells, 0); i >= 0; i = BoardLayout.nextSetBit(cells, i + 1))
+			far = Math.max(far, corner[i]);
+		long largest = layout.getTriangleSize()*((DISTANCE_WEIGHT + HOP_WEIGHT)*far + far*far);
+		return (int) Math.max(1, (largest + EVAL_LIMIT - 1) / EVAL_LIMIT);
+	}
+
+	/**
+	 * Helper method. Computes one player's evaluation term from the sums the position
+	 * keeps up to date on every move
+	 * @param playerIndex index of player
+	 * @return weighted sum of distances plus sum of squared distances to the goal
+	 * corner, plus the weighted jump-aware estimate of moves to the goal triangle
+	 */
+	private int evaluate(int playerIndex) {
+		return DISTANCE_WEIGHT*position.getDistanceSum(playerIndex) + position.getSquaredDistanceSum(playerIndex)
+				+ HOP_WEIGHT*position.getHopEstimate(playerIndex);
+	}
+
+	/**
+	 * Helper method. Sorts moves so that moves gaining the most ground toward the
+	 * player's goal come first
+	 * @param plyMoves encoded moves to sort
+	 * @param scores scratch buffer for ordering scores
+	 * @param player index of player moving
+	 * @param count number of moves
+	 */
+	private void orderMoves(int[] plyMoves, int[] scores, int player, int count) {
+		int[] dist = distance[player];
+		for(int i = 0; i < count; i++) {
+			int move = plyMoves[i];
+			scores[i] = dist[MoveGenerator.getSrc(move)] - dist[MoveGenerator.getDst(move)];
+		}
+		/** Insertion sort, descending. Move lists are short */
+		for(int i = 1; i < count; i++) {
+			int move = plyMoves[i];
+			int score = scores[i];
+			int j = i - 1;
+			while(j >= 0 && scores[j] < score) {
+				plyMoves[j+1] = plyMoves[j];
+				scores[j+1] = scores[j];
+				j--;
+			}
+			plyMoves[j+1] = move;
+			scores[j+1] = score;
+		}
+	}
+
+	/**
+	 * Helper method. Returns a ply's ordering score buffer, reallocating it whenever
+	 * the ply's move buffer has grown past it
+	 * @param ply ply of buffer
+	 * @return buffer
+	 */
+	private int[] orderBuffer(int ply) {
+		if(order[ply] == null || order[ply].length < moves[ply].length) order[ply] = new int[moves[ply].length];
+		return order[ply];
+	}
+
+	/**
+	 * Helper method. Returns the player who moves after a given player
+	 * @param player index of player
+	 * @return index of next player
+	 */
+	private int next(int player) {
+		return player == numPlayers - 1 ? 0 : player + 1;
+	}
+
+	/**
+	 * Returns the number of nodes visited by the last search
+	 * @return nodes searched
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Returns the depth of the deepest iteration the last search finished
+	 * @return depth reached
+	 */
+	public int getDepthReached() {
+		return depthReached;
+	}
+
+	@Override
+	public String toString() {
+		return "SearchEngine[depth=" + depthReached + ", nodes=" + nodes + ", table=" + table + "]";
+	}
+}
@@ -0,0 +1,440 @@
+import java.awt.*;
+import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.*;
+
+class Surface extends JPanel implements BoardListener {
+	private static final long serialVersionUID = 1L;
+
+	/** Frame that the surface draws to, or null when drawing offscreen */
+	private App app;
+	/** Board drawn when the surface has no frame */
+	private Board board;
+	/** Cell indices of the possible moves of the piece last clicked on */
+	private int[] moveBuffer;
+	/** Number of possible moves in moveBuffer */
+	private int moveCount;
+	/** Whether each cell index is a possible move */
+	private boolean[] possible;
+	/** Draws the board from cached images */
+	private BoardRenderer renderer;
+	/** Node of the piece selected to move, or null */
+	private HexNode<Piece> toMove;
+	/** Index of the current player's color in the App.PLAYERS field */
+	private int currPlayerIndex;
+	/** Index of the winning player */
+	private int winPlayerIndex;
+	/** Search for computer players */
+	private MoveSearch engine;
+	/** Opening book the computer players answer from, or null. Only used by the computerPlayers thread */
+	private OpeningBook book;
+	/** Race tablebase the computer players finish from, or null. Only used by the computerPlayers thread */
+	private RaceTablebase tablebase;
+	/** Runs the computer players' searches, one at a time, off the event dispatch thread */
+	private ExecutorService computerPlayers;
+	/** Search of the computer player that is thinking, or null */
+	private Future<?> thinking;
+	/** Starts a new game a while after a player wins */
+	private Timer newGameTimer;
+
+	/**
+	 * Constructs a surface to draw to the screen
+	 * @param app frame that surface draws to
+	 */
+	public Surface(App app) {
+		this.app = app;
+		currPlayerIndex = 0;
+		winPlayerIndex = -1;
+		/** Alpha-beta for two players, Monte Carlo Tree Search for more */
+		BoardLayout layout = app.getBoard().getLayout();
+		renderer = BoardRenderer.forLayout(layout);
+		if(App.PLAYERS.length == 2)
+			engine = new ParallelSearch(layout, App.PLAYERS.length, new TranspositionTable(App.TRANSPOSITION_TABLE_MB));
+		else
+			engine = new MonteCarloSearch(layout, App.PLAYERS.length);
+		File bookFile = new File(App.OPENING_BOOK);
+		if(bookFile.exists()) {
+			try {
+				book = new OpeningBook(bookFile);
+			} catch(IOException e) {
+				Logger.getLogger(Surface.class.getName()).log(Level.WARNING, "Cannot read opening book " + bookFile, e);
+			}
+		}
+		File tablebaseFile = new File(App.RACE_TABLEBASE);
+		if(tablebaseFile.exists()) {
+			try {
+				tablebase = new RaceTablebase(tablebaseFile);
+			} catch(IOException e) {
+				Logger.getLogger(Surface.class.getName()).log(Level.WARNING, "Cannot read race tablebase " + tablebaseFile, e);
+			}
+		}
+		computerPlayers = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Computer player");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		addMouseListener(new HitTestAdapter());
+		app.getBoard().addListener(this);
+
+		/** Fires once on the event dispatch thread, after the win sequence has been shown */
+		newGameTimer = new Timer(App.WIN_SEQUENCE_MILLIS, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				newGame();
+			}
+		});
+		newGameTimer.setRepeats(false);
+
+		/** N starts a new game at any time, stopping a computer player that is thinking */
+		getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_N, 0), "newGame");
+		getActionMap().put("newGame", new AbstractAction() {
+			private static final long serialVersionUID = 1L;
+
+			public void actionPerformed(ActionEvent e) {
+				newGameTimer.stop();
+				newGame();
+			}
+		});
+
+		/** If the first player is a computer player, it starts thinking straight away */
+		runComputerPlayer();
+	}
+
+	/**
+	 * Constructs a surface that draws a fixed board without a frame, for rendering
+	 * offscreen. It does not listen to the mouse or run computer players.
+	 * @param board board to draw
+	 */
+	Surface(Board board) {
+		this.board = board;
+		currPlayerIndex = 0;
+		winPlayerIndex = -1;
+		setSize(App.SCREEN_SIZE, App.SCREEN_SIZE);
+		renderer = BoardRenderer.forLayout(board.getLayout());
+	}
+
+	/**
+	 * Helper method. Gets the board being drawn
+	 * @return the frame's board, or the fixed board if there is no frame
+	 */
+	private Board getBoard() {
+		return app == null ? board : app.getBoard();
+	}
+
+	/**
+	 * Draws game to screen, or to any other graphics object such as an offscreen image.
+	 * The empty board is copied from the renderer's cached image, and only the cells
+	 * inside the clip are drawn over it. Pieces are read from the board's current
+	 * snapshot, so the drawing is of one position even if the board moves meanwhile.
+	 * The board is sized to fit the surface, so a resize gets a renderer for the new size.
+	 * @param g graphics object
+	 */
+	void draw(Graphics g) {
+		Board board = getBoard();
+		PositionSnapshot position = board.getSnapshot();
+		if(renderer.getLayout() != position.getLayout() || renderer.getWidth() != getWidth() || renderer.getHeight() != getHeight())
+			renderer = BoardRenderer.forLayout(position.getLayout(), getWidth(), getHeight());
+		Rectangle clip = g.getClipBounds();
+		int selected = toMove == null ? -1 : board.getIndex(toMove);
+
+		renderer.drawBackground(g, getBackground());
+		g.setColor(Color.BLACK);
+		int margin = getStatusMargin();
+		/** Draws Win Sequence */
+		if(winPlayerIndex >= 0)
+			g.drawString("The " + App.PLAYER_NAMES[winPlayerIndex] + " player won!", margin, margin);
+		/** Draws thinking indicator while a computer player searches */
+		else if(thinking != null)
+			g.drawString("The " + App.PLAYER_NAMES[currPlayerIndex] + " player is thinking...", margin, margin);
+		/** Draws Non-Win Sequence */
+		else
+			g.drawString("It's the " + App.PLAYER_NAMES[currPlayerIndex] + " player's turn", margin, margin);
+
+		for(int i : renderer.getCells()) {
+			if(clip != null && !renderer.intersects(clip, i)) continue;
+			int owner = position.getOwner(i);
+
+			/** If there is a piece at this position, draw it. Pieces are darker unless selected, and the winner's are brightened */
+			if(owner >= 0) {
+				Color color = i == selected ? board.getPlayer(owner) : board.getPlayer(owner).darker();
+				if(owner == winPlayerIndex)
+					renderer.drawCell(g, i, color.brighter());
+				else renderer.drawCell(g, i, color);
+			}
+			/** Draws move-assistance mechanism */
+			else if(winPlayerIndex < 0 && App.MOVE_ASSISTANCE && possible != null && possible[i])
+				renderer.drawCell(g, i, TRANSPARENT_GRAY);
+			/** Empty spaces are already drawn on the background */
+		}
+	}
+
+	/**
+	 * Helper method. Repaints the screen area of one cell
+	 * @param index cell index
+	 */
+	private void repaintCell(int index) {
+		repaint(renderer.getBounds(index));
+	}
+
+	/**
+	 * Helper method. Repaints the line of text giving the player's turn or the winner
+	 */
+	private void repaintStatus() {
+		FontMetrics metrics = getFontMetrics(getFont());
+		repaint(0, getStatusMargin() - metrics.getAscent(), getWidth(), metrics.getHeight());
+	}
+
+	/**
+	 * Helper method. Gets the distance of the status line from the top left corner
+	 * @return margin in pixels
+	 */
+	private int getStatusMargin() {
+		return Math.min(getWidth(), getHeight()) / 20;
+	}
+
+	/**
+	 * Repaints the two cells a move changed. Nothing is repainted unless the board changes.
+	 * @param src cell index the piece moved from
+	 * @param dst cell index the piece moved to
+	 */
+	public void pieceMoved(int src, int dst) {
+		repaintCell(src);
+		repaintCell(dst);
+	}
+
+	/**
+	 * Helper method. Highlights or unhighlights a piece, repainting it if it changed
+	 * @param n node with the piece
+	 * @param toHighlight whether to highlight the piece
+	 */
+	private void highlight(HexNode<Piece> n, boolean toHighlight) {
+		if(n.getKey().isHighlighted() == toHighlight) return;
+		n.getKey().highlight(toHighlight);
+		repaintCell(getBoard().getIndex(n));
+	}
+
+	@Override
+	/**
+	 * Paints to screen. Calls draw method to draw game
+	 * @param g graphics object
+	 */
+	public void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		draw(g);
+	}
+
+	/**
+	 * Detects user interaction with surface
+	 * @author Noah Haselow
+	 */
+	class HitTestAdapter extends MouseAdapter {
+
+		/**
+		 * Runs when mouse is clicked. The cell under the mouse is found directly from
+		 * the pixel, so a click takes the same time whatever the size of the board.
+		 * @param e mouse event
+		 */
+		public void mouseClicked(MouseEvent e) {
+			/** The board is finished until the new game starts, and the human waits while computer players think */
+			if(winPlayerIndex >= 0 || thinking != null) return;
+			Board board = getBoard();
+			int index = renderer.getCellAt(e.getX(), e.getY());
+			HexNode<Piece> clicked = index >= 0 ? board.getNode(index) : null;
+			HexNode<Piece> selected = toMove;
+			/** Resets the selection and move-assistance */
+			unhighlight();
+
+			/** If the user clicked on one of the player's pieces, select it and show its moves */
+			if(isPlayer(clicked)) {
+				toMove = clicked;
+				highlight(clicked, true);
+				updatePossibleMoves(clicked);
+			}
+			/** If the user clicked on an empty space, move the selected piece there if possible */
+			else if(clicked != null && clicked.getKey() == null && selected != null && board.move(selected, clicked)) {
+				/** Test for winner and run win sequence */
+				int winner = board.won();
+				if(winner >= 0) {
+					runWinSequence(winner);
+					return;
+				}
+				/** Move to next player and run Computer Player */
+				nextPlayer();
+				runComputerPlayer();
+			}
+		}
+	}//end HitTestAdapter class
+
+	/**
+	 * Unhighlights selected piece and resets move-assistance mechanism
+	 */
+	private void unhighlight() {
+		if(toMove != null && toMove.getKey() != null) highlight(toMove, false);
+		toMove = null;
+		updatePossibleMoves(null);
+	}
+
+	/**
+	 * Determines which spots on board are possible moves given a piece to move.
+	 * Holds these moves in the private fields moveBuffer and possible, and repaints
+	 * the cells that stop or start being possible moves.
+	 * 
+	 * @param src node to move
+	 */
+	private void updatePossibleMoves(HexNode<Piece> src) {
+		Board board = getBoard();
+		int size = board.getLayout().getSize();
+		if(moveBuffer == null || moveBuffer.length < size) {
+			moveBuffer = new int[size];
+			possible = new boolean[size];
+			moveCount = 0;
+		}
+
+		for(int i = 0; i < moveCount; i++) {
+			possible[moveBuffer[i]] = false;
+			repaintCell(moveBuffer[i]);
+		}
+		moveCount = 0;
+		if(src == null || src.getKey() == null) return;
+
+		moveCount = board.getMoves(board.getIndex(src), moveBuffer);
+		for(int i = 0; i < moveCount; i++) {
+			possible[moveBuffer[i]] = true;
+			repaintCell(moveBuffer[i]);
+		}
+	}
+
+	/**
+	 * Determines if the current player has a piece at a given node
+	 * 
+	 * @param n node to check
+	 * @return true if the current player has a piece at the node, false otherwise.
+	 */
+	private boolean isPlayer(HexNode<Piece> n) {
+		if(n == null || n.getKey() == null) return false;
+		return (n.getKey().getPlayer().equals(App.PLAYERS[currPlayerIndex]));
+	}
+
+	/**
+	 * Sets the currPlayerIndex field to the next player's index
+	 */
+	private void nextPlayer() {
+		if(currPlayerIndex == App.PLAYERS.length - 1)
+			currPlayerIndex = 0;
+		else
+			currPlayerIndex++;
+		repaintStatus();
+	}
+
+	/**
+	 * Starts the AI for the current player if it is a computer player. The search runs in the
+	 * background on a snapshot of the position so the window stays responsive, and its move is
+	 * made on the event dispatch thread by applyComputerMove.
+	 */
+	private void runComputerPlayer() {
+		if(winPlayerIndex >= 0 || currPlayerIndex < App.NUM_HUMAN_PLAYERS) return;
+		final Board board = getBoard();
+		final PositionSnapshot snapshot = board.getSnapshot();
+		final int playerIndex = currPlayerIndex;
+
+		thinking = computerPlayers.submit(new Runnable() {
+			public void run() {
+				int move = -1;
+				try {
+					BitBoard position = snapshot.toBitBoard();
+					/** Known openings are answered from the book without searching */
+					if(book != null) move = book.getMove(position, playerIndex);
+					/** Races home with the other armies out of the way are played from the tablebase, fastest among lines it covers */
+					if(move == -1 && tablebase != null) move = tablebase.getMove(position, playerIndex);
+					if(move == -1) {
+						move = engine.findBestMove(position, playerIndex, App.AI_TIME_BUDGET);
+						Logger.getLogger(Surface.class.getName()).log(Level.FINE, "{0}", engine);
+					}
+				} catch(RuntimeException e) {
+					Logger.getLogger(Surface.class.getName()).log(Level.SEVERE, null, e);
+				}
+				final int bestMove = move;
+				EventQueue.invokeLater(new Runnable() {
+					public void run() {
+						applyComputerMove(board, playerIndex, bestMove);
+					}
+				});
+			}
+		});
+		setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+		repaintStatus();
+	}
+
+	/**
+	 * Helper method. Moves a computer player's piece once its search is done, then starts
+	 * the next computer player, if any
+	 * @param board board the search was started on
+	 * @param playerIndex index of the player that searched
+	 * @param move encoded move found, or -1 if the player has no moves
+	 */
+	private void applyComputerMove(Board board, int playerIndex, int move) {
+		/** Error Handling: The search was cancelled, or its game is over */
+		if(thinking == null || thinking.isCancelled() || board != getBoard() || playerIndex != currPlayerIndex) return;
+		thinking = null;
+		setCursor(Cursor.getDefaultCursor());
+
+		if(move != -1)
+			board.move(board.getNode(MoveGenerator.getSrc(move)), board.getNode(MoveGenerator.getDst(move)));
+		/** Test for winner and run win sequence */
+		int winner = board.won();
+		if(winner >= 0) {
+			runWinSequence(winner);
+			return;
+		}
+		nextPlayer();
+		runComputerPlayer();
+	}
+
+	/**
+	 * Helper method. Cancels the search of the computer player that is thinking, if any
+	 */
+	private void cancelComputerPlayer() {
+		if(thinking != null) thinking.cancel(true);
+		thinking = null;
+		setCursor(Cursor.getDefaultCursor());
+	}
+
+	/**
+	 * Runs the Win Sequence after a player won the game.
+	 */
+	private void runWinSequence(int playerIndex) {
+		winPlayerIndex = playerIndex;
+		/** Every one of the winner's pieces changes color */
+		repaint();
+		newGameTimer.restart();
+	}
+
+	/**
+	 * Helper method. Ends the win sequence, or abandons the game being played, and starts a
+	 * new game with the first player to move
+	 */
+	private void newGame() {
+		cancelComputerPlayer();
+		getBoard().removeListener(this);
+		app.newGame();
+		getBoard().addListener(this);
+		winPlayerIndex = -1;
+		currPlayerIndex = 0;
+		toMove = null;
+		updatePossibleMoves(null);
+		repaint();
+		runComputerPlayer();
+	}
+
+	/** Color for move-assistance mechanism */
+	private static final Color TRANSPARENT_GRAY = new Color(128, 128, 128, 100);
+} //end surface class
@@ -0,0 +1,280 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless self-play tournament. Plays many AI-vs-AI games at once, one game per
+ * task on a fixed thread pool, with no Swing frame. Engines take turns in the seats
+ * so that each engine plays every seat equally often. Reports each engine's win
+ * rate and Elo estimate, the average game length and the games played per second.
+ *
+ * Usage: java Tournament [--games N] [--players 2|4|6] [--radius R] [--threads T]
+ *                        [--budget MILLIS] [--max-plies N] [--engines E1,E2,...]
+ *                        [--archive FILE]
+ * where each engine is alphabeta, mcts or greedy. With --archive, every game is
+ * appended to a GameArchive.
+ */
+public class Tournament {
+
+	/** Engines that can play in a tournament */
+	public static final String[] ENGINES = {"alphabeta", "mcts", "greedy"};
+
+	/** Number of games to play */
+	private int games = 100;
+	/** Number of players per game */
+	private int players = 2;
+	/** Board radius */
+	private int radius = App.BOARD_RADIUS;
+	/** Number of games played at once */
+	private int threads = Runtime.getRuntime().availableProcessors();
+	/** Time budget per move in milliseconds */
+	private long budget = 10;
+	/** Games reaching this many plies are drawn */
+	private int maxPlies = 1000;
+	/** Names of the competing engines */
+	private String[] engines = {"alphabeta", "mcts"};
+	/** Archive to append the games to, or null */
+	private String archive;
+	/** Writer of the archive while games are played */
+	private GameArchive.Writer writer;
+
+	/** Wins of each engine over each other engine, counting the winner over every loser */
+	private long[][] pairWins;
+	/** Games won by each engine */
+	private long[] wins;
+	/** Games each engine played in */
+	private long[] played;
+	/** Games without a winner */
+	private long draws;
+	/** Plies played over all games */
+	private long totalPlies;
+
+	/**
+	 * Runs a tournament from the command line
+	 * @param args options, see the class comment
+	 */
+	public static void main(String[] args) throws InterruptedException, IOException {
+		Tournament t = new Tournament();
+		t.parse(args);
+		t.run();
+	}
+
+	/**
+	 * Helper method. Reads command-line options
+	 * @param args options
+	 */
+	private void parse(String[] args) {
+		for(int i = 0; i < args.length; i++) {
+			/** Error Handling: Every option takes a value */
+			if(i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + args[i]);
+			String value = args[++i];
+			switch(args[i-1]) {
+				case "--games": games = Integer.parseInt(value); break;
+				case "--players": players = Integer.parseInt(value); break;
+				case "--radius": radius = Integer.parseInt(value); break;
+				case "--threads": threads = Integer.parseInt(value); break;
+				case "--budget": budget = Long.parseLong(value); break;
+				case "--max-plies": maxPlies = Integer.parseInt(value); break;
+				case "--engines": engines = value.split(","); break;
+				case "--archive": archive = value; break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i-1]);
+			}
+		}
+		/** Error Handling: There must be either 2, 4, or 6 players, and known engines */
+		if(players != 2 && players != 4 && players != 6) throw new IllegalArgumentException("Players must be 2, 4 or 6");
+		for(String e : engines) {
+			if(!Arrays.asList(ENGINES).contains(e)) throw new IllegalArgumentException("Unknown engine " + e);
+		}
+		/** Error Handling: Archived games must fit in a record */
+		if(archive != null && maxPlies > GameRecord.MAX_MOVES) throw new IllegalArgumentException("Archived games are limited to " + GameRecord.MAX_MOVES + " plies");
+	}
+
+	/**
+	 * Plays every game and prints the report
+	 */
+	public void run() throws InterruptedException, IOException {
+		pairWins = new long[engines.length][engines.length];
+		wins = new long[engines.length];
+		played = new long[engines.length];
+		if(archive != null) writer = new GameArchive.Writer(new File(archive));
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<int[]>> results = new ArrayList<Future<int[]>>();
+		long start = System.nanoTime();
+		for(int g = 0; g < games; g++) results.add(pool.submit(new Game(g)));
+
+		for(Future<int[]> f : results) {
+			try {
+				record(f.get());
+			} catch(ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		pool.shutdown();
+		if(writer != null) {
+			System.out.printf("%d games in %s%n", writer.size(), archive);
+			writer.close();
+		}
+
+		report(seconds);
+	}
+
+	/**
+	 * One game between engines, seated by rotating the engine list by the game number
+	 */
+	private class Game implements Callable<int[]> {
+		/** Game number */
+		private int number;
+
+		Game(int number) {
+			this.number = number;
+		}
+
+		/**
+		 * Plays the game
+		 * @return engine index in each seat, then the winning seat or -1, then the number of moves made
+		 */
+		@Override
+		public int[] call() throws IOException {
+			BoardLayout layout = BoardLayout.forRadius(radius);
+			BitBoard position = new BitBoard(layout, players);
+			int[] result = new int[players + 2];
+			Player[] seated = new Player[players];
+			for(int s = 0; s < players; s++) {
+				result[s] = (s + number) % engines.length;
+				seated[s] = createEngine(engines[result[s]], layout);
+			}
+
+			/** A player with no move passes. Passes are not plies and are not recorded, and a round of passes draws the game */
+			int player = 0;
+			int passes = 0;
+			while(position.getWinner() < 0 && position.getPly() < maxPlies && passes < players) {
+				int move = seated[player].search.findBestMove(position, player, seated[player].budget);
+				if(move != -1) {
+					position.makeMove(MoveGenerator.getSrc(move), MoveGenerator.getDst(move));
+					passes = 0;
+				}
+				else passes++;
+				player = player == players - 1 ? 0 : player + 1;
+			}
+			for(Player p : seated) p.shutdown();
+			if(writer != null) writer.add(GameRecord.of(position));
+
+			result[players] = position.getWinner();
+			result[players + 1] = position.getPly();
+			return result;
+		}
+	}
+
+	/**
+	 * An engine with its time budget
+	 */
+	private static class Player {
+		/** Engine */
+		MoveSearch search;
+		/** Time budget per move in milliseconds */
+		long budget;
+
+		Player(MoveSearch search, long budget) {
+			this.search = search;
+			this.budget = budget;
+		}
+
+		/**
+		 * Releases the engine's threads, if it has any
+		 */
+		void shutdown() {
+			if(search instanceof MonteCarloSearch) ((MonteCarloSearch) search).shutdown();
+		}
+	}
+
+	/**
+	 * Helper method. Creates a single-threaded engine by name
+	 * @param name engine name
+	 * @param layout board layout
+	 * @return engine and budget
+	 */
+	private Player createEngine(String name, BoardLayout layout) {
+		switch(name) {
+			case "alphabeta": return new Player(new SearchEngine(layout, players), budget);
+			case "mcts": return new Player(new MonteCarloSearch(layout, players, 1), budget);
+			/** A zero budget stops alpha-beta after its first, one-ply iteration */
+			case "greedy": return new Player(new SearchEngine(layout, players), 0);
+			default: throw new IllegalArgumentException("Unknown engine " + name);
+		}
+	}
+
+	/**
+	 * Helper method. Adds a game's result to the totals
+	 * @param result result of Game.call
+	 */
+	private void record(int[] result) {
+		int winner = result[players];
+		totalPlies += result[players + 1];
+		boolean[] seated = new boolean[engines.length];
+		for(int s = 0; s < players; s++) seated[result[s]] = true;
+		for(int e = 0; e < engines.length; e++) {
+			if(seated[e]) played[e]++;
+		}
+		if(winner < 0) {
+			draws++;
+			return;
+		}
+		int w = result[winner];
+		wins[w]++;
+		for(int s = 0; s < players; s++) {
+			if(s != winner && result[s] != w) pairWins[w][result[s]]++;
+		}
+	}
+
+	/**
+	 * Helper method. Prints win rates, Elo estimates and throughput
+	 * @param seconds time taken by all games
+	 */
+	private void report(double seconds) {
+		double[] elo = estimateElo();
+		System.out.printf("%d games, %d players, radius %d, %d threads, %d ms per move%n",
+				games, players, radius, threads, budget);
+		for(int e = 0; e < engines.length; e++) {
+			System.out.printf("  %-10s win rate %.3f  Elo %+.0f%n",
+					engines[e], played[e] == 0 ? 0 : (double) wins[e] / played[e], elo[e]);
+		}
+		System.out.printf("  draws %d, average plies %.1f, %.2f games/sec%n",
+				draws, (double) totalPlies / games, games / seconds);
+	}
+
+	/**
+	 * Helper method. Fits Bradley-Terry strengths to the pairwise wins and converts
+	 * them to Elo, relative to the first engine. Each engine also gets one game against
+	 * a virtual opponent of strength 1, half won, which keeps engines that never won or
+	 * never lost at a finite rating.
+	 * @return Elo of each engine
+	 */
+	private double[] estimateElo() {
+		int n = engines.length;
+		double[] strength = new double[n];
+		Arrays.fill(strength, 1);
+		for(int iteration = 0; iteration < 1000; iteration++) {
+			for(int i = 0; i < n; i++) {
+				double won = 0.5, weight = 1 / (strength[i] + 1);
+				for(int j = 0; j < n; j++) {
+					if(i == j) continue;
+					long games = pairWins[i][j] + pairWins[j][i];
+					won += pairWins[i][j];
+					if(games > 0) weight += games / (strength[i] + strength[j]);
+				}
+				strength[i] = won / weight;
+			}
+		}
+		double[] elo = new double[n];
+		for(int i = 0; i < n; i++) elo[i] = 400*Math.log10(strength[i] / strength[0]);
+		return elo;
+	}
+}
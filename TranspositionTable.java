@@ -0,0 +1,213 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size transposition table stored off the Java heap in direct buffers, so
+ * that tables of several gigabytes add nothing to garbage collection.
+ *
+ * Each entry is two longs: the packed data, and the position key XORed with that
+ * data. Threads read and write entries without locks. A torn entry, written by two
+ * threads at once, fails the key check and reads as a miss. Replacement is lossy:
+ * a store overwrites whatever entry the key maps to unless that entry holds a
+ * deeper search of the same position.
+ *
+ * Entries pack a score, search depth, bound type and best move into one long.
+ */
+public class TranspositionTable {
+
+	/** Bound types */
+	public static final int EXACT = 0;
+	public static final int LOWER = 1;
+	public static final int UPPER = 2;
+
+	/** Bytes per entry */
+	private static final int ENTRY_BYTES = 16;
+	/** log2 of the largest buffer. Direct buffers are limited to 2GB each */
+	private static final int CHUNK_BITS = 30;
+	/** Number of entries sampled to estimate occupancy */
+	private static final int OCCUPANCY_SAMPLES = 1000;
+
+	/** Packed data layout: move in bits 0-31, then score, depth, bound and a present flag */
+	private static final int SCORE_SHIFT = 32;
+	private static final int SCORE_BITS = 21;
+	/** Largest score, positive or negative, that an entry holds without wrapping */
+	public static final int MAX_SCORE = (1 << (SCORE_BITS - 1)) - 1;
+	private static final int DEPTH_SHIFT = 53;
+	private static final int DEPTH_BITS = 7;
+	private static final int BOUND_SHIFT = 60;
+	private static final long PRESENT = 1L << 62;
+
+	/** Atomic view of the longs in a direct buffer */
+	private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	/** Buffers holding the entries */
+	private ByteBuffer[] chunks;
+	/** log2 of the number of entries in each buffer */
+	private int entriesPerChunkBits;
+	/** Number of entries, minus one. The number of entries is a power of two */
+	private long mask;
+
+	/** Number of probes */
+	private LongAdder probes;
+	/** Number of probes that found their position */
+	private LongAdder hits;
+
+	/**
+	 * Constructor. Allocates a table of at most a given size
+	 * @param megabytes size of the table in megabytes
+	 */
+	public TranspositionTable(long megabytes) {
+		/** Error Handling: Table must hold at least one entry */
+		if(megabytes < 1) throw new IllegalArgumentException();
+
+		long entries = Long.highestOneBit(megabytes*1024*1024 / ENTRY_BYTES);
+		mask = entries - 1;
+		long chunkBytes = Math.min(entries*ENTRY_BYTES, 1L << CHUNK_BITS);
+		entriesPerChunkBits = Long.numberOfTrailingZeros(chunkBytes / ENTRY_BYTES);
+		chunks = new ByteBuffer[(int) (entries*ENTRY_BYTES / chunkBytes)];
+		for(int i = 0; i < chunks.length; i++) {
+			chunks[i] = ByteBuffer.allocateDirect((int) chunkBytes).order(ByteOrder.nativeOrder());
+		}
+
+		probes = new LongAdder();
+		hits = new LongAdder();
+	}
+
+	/**
+	 * Looks up a position
+	 * @param key position key
+	 * @return packed entry data, or 0 if the position is not in the table
+	 */
+	public long probe(long key) {
+		probes.increment();
+		long index = key & mask;
+		ByteBuffer chunk = chunks[(int) (index >>> entriesPerChunkBits)];
+		int offset = (int) (index & ((1L << entriesPerChunkBits) - 1))*ENTRY_BYTES;
+
+		long data = (long) LONGS.getOpaque(chunk, offset + 8);
+		long check = (long) LONGS.getOpaque(chunk, offset);
+		if(data == 0 || (check ^ data) != key) return 0;
+		hits.increment();
+		return data;
+	}
+
+	/**
+	 * Stores a search result. Keeps an existing entry for the same position if it was
+	 * searched deeper.
+	 * @param key position key
+	 * @param depth depth searched, 0 to 127
+	 * @param bound EXACT, LOWER or UPPER
+	 * @param score score of the position, from -MAX_SCORE to MAX_SCORE
+	 * @param move best move found, or -1
+	 */
+	public void store(long key, int depth, int bound, int score, int move) {
+		/** Error Handling: The score must fit its field, or it would read back as a different score */
+		if(score > MAX_SCORE || score < -MAX_SCORE) throw new IllegalArgumentException("Score out of range " + score);
+
+		long index = key & mask;
+		ByteBuffer chunk = chunks[(int) (index >>> entriesPerChunkBits)];
+		int offset = (int) (index & ((1L << entriesPerChunkBits) - 1))*ENTRY_BYTES;
+
+		long old = (long) LONGS.getOpaque(chunk, offset + 8);
+		long oldCheck = (long) LONGS.getOpaque(chunk, offset);
+		if(old != 0 && (oldCheck ^ old) == key && getDepth(old) > depth) return;
+
+		long data = PRESENT
+				| ((long) bound << BOUND_SHIFT)
+				| ((long) Math.min(depth, (1 << DEPTH_BITS) - 1) << DEPTH_SHIFT)
+				| (((long) score & ((1L << SCORE_BITS) - 1)) << SCORE_SHIFT)
+				| (move & 0xFFFFFFFFL);
+		LONGS.setOpaque(chunk, offset, key ^ data);
+		LONGS.setOpaque(chunk, offset + 8, data);
+	}
+
+	/**
+	 * Returns the best move of an entry
+	 * @param data packed entry data
+	 * @return encoded move, or -1 if none was stored
+	 */
+	public static int getMove(long data) {
+		return (int) data;
+	}
+
+	/**
+	 * Returns the score of an entry
+	 * @param data packed entry data
+	 * @return score
+	 */
+	public static int getScore(long data) {
+		return (int) (data << (64 - SCORE_SHIFT - SCORE_BITS) >> (64 - SCORE_BITS));
+	}
+
+	/**
+	 * Returns the depth of an entry
+	 * @param data packed entry data
+	 * @return depth searched
+	 */
+	public static int getDepth(long data) {
+		return (int) (data >>> DEPTH_SHIFT) & ((1 << DEPTH_BITS) - 1);
+	}
+
+	/**
+	 * Returns the bound type of an entry
+	 * @param data packed entry data
+	 * @return EXACT, LOWER or UPPER
+	 */
+	public static int getBound(long data) {
+		return (int) (data >>> BOUND_SHIFT) & 3;
+	}
+
+	/**
+	 * Empties the table and resets its statistics
+	 */
+	public void clear() {
+		for(ByteBuffer chunk : chunks) {
+			for(int offset = 0; offset < chunk.capacity(); offset += 8) LONGS.setOpaque(chunk, offset, 0L);
+		}
+		probes.reset();
+		hits.reset();
+	}
+
+	/**
+	 * Returns the fraction of probes that found their position
+	 * @return hit rate, 0 to 1
+	 */
+	public double getHitRate() {
+		long total = probes.sum();
+		return total == 0 ? 0 : (double) hits.sum() / total;
+	}
+
+	/**
+	 * Estimates the fraction of entries in use by sampling entries spread across the table
+	 * @return occupancy, 0 to 1
+	 */
+	public double getOccupancy() {
+		long entries = mask + 1;
+		long samples = Math.min(entries, OCCUPANCY_SAMPLES);
+		long step = entries / samples;
+		int used = 0;
+		for(long index = 0; index < samples*step; index += step) {
+			ByteBuffer chunk = chunks[(int) (index >>> entriesPerChunkBits)];
+			int offset = (int) (index & ((1L << entriesPerChunkBits) - 1))*ENTRY_BYTES;
+			if((long) LONGS.getOpaque(chunk, offset + 8) != 0) used++;
+		}
+		return (double) used / samples;
+	}
+
+	/**
+	 * Returns the number of entries in the table
+	 * @return capacity in entries
+	 */
+	public long getCapacity() {
+		return mask + 1;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("TranspositionTable[entries=%d, hitRate=%.3f, occupancy=%.3f]",
+				getCapacity(), getHitRate(), getOccupancy());
+	}
+}